@@ -1,17 +1,11 @@
+import java.io.*;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.lang.reflect.InvocationTargetException;
 
 class Cell {
     private int index;
     private int richness;
     private int[] neighbours;
-    private boolean shadowedNextRound;
-    private boolean hasNeighborTree;
-    private int countTreesInLine; //possible shadows
-    private int completeHeuristics;
-    private int growHeuristics;
-    private int seedHeuristics;
-    private List<Integer> edgeCells = new ArrayList<>(Arrays.asList(19, 22, 25, 28, 31, 34));
 
     public int getIndex() {
         return index;
@@ -29,208 +23,736 @@ class Cell {
         return neighbours;
     }
 
-    public boolean isShadowedNextRound() {
-        return shadowedNextRound;
+    public Cell(int index, int richness, int[] neighbours) {
+        this.index = index;
+        this.richness = richness;
+        this.neighbours = neighbours;
     }
 
-    public void setShadowedNextRound(boolean shadowedNextRound) {
-        this.shadowedNextRound = shadowedNextRound;
+    @Override
+    public String toString() {
+        return "Cell: index: " + index + " richness: " + richness;
     }
+}
 
-    public void setCellShadowNextRound(Game game, int left, int fromTreeSize) {
-        int neighborToShadow = this.getNeighbour((game.getSunDirectionTo() + 1) % 6);
-        //from a certain tree 3 cell is shadowed, so we measure with left values 3,2,1
-        if (neighborToShadow != -1 && left >= 1) {
-            Cell neighborToShadowCell = game.getBoardCell(neighborToShadow);
-            //if there is a bigger tree on the cell than fromTreeSize, than no shadow
-            if (game.getTree(neighborToShadowCell.getIndex()) != null &&
-                    game.getTree(neighborToShadowCell.getIndex()).getSize() <= fromTreeSize)
-                neighborToShadowCell.setShadowedNextRound(true);
-            //go on with the neighbor cell in that direction
-            neighborToShadowCell.setCellShadowNextRound(game, --left, fromTreeSize);
+/*
+board geometry, built once from the neighbour lists after the board is read
+ray[direction][cell][d - 1] is the cell d steps away in that direction (-1 if off board)
+rayMask[direction][cell][d] has every cell 1..d steps away in that direction
+ */
+class Hex {
+    static final int[][][] ray = new int[6][State.MAX_CELLS][3];
+    static final long[][][] rayMask = new long[6][State.MAX_CELLS][4];
+    //cells on the 6 lines at most 3 steps away, a tree there can shadow the cell on some day
+    static final long[] lineMask = new long[State.MAX_CELLS];
+    static final long[] neighbourMask = new long[State.MAX_CELLS];
+    //rangeMask[r][cell] has the cells at most r steps away (the cell itself included), r = 0..3
+    static final long[][] rangeMask = new long[4][State.MAX_CELLS];
+    //steps between two cells, -1 if there is no path
+    static final int[][] distance = new int[State.MAX_CELLS][State.MAX_CELLS];
+    static int cellCount;
+    static long boardMask;
+
+    static void init(List<Cell> cells) {
+        //every board has the same geometry, only the richness differs
+        if (cellCount == cells.size()) return;
+        cellCount = cells.size();
+        boardMask = cellCount == 64 ? -1L : (1L << cellCount) - 1;
+        int[][] neighbours = new int[cellCount][];
+        for (Cell cell : cells) neighbours[cell.getIndex()] = cell.getNeighbours();
+        for (int direction = 0; direction < 6; direction++) {
+            for (Cell cell : cells) {
+                int index = cell.getIndex();
+                int next = index;
+                long mask = 0;
+                for (int d = 1; d <= 3; d++) {
+                    if (next != -1) next = neighbours[next][direction];
+                    ray[direction][index][d - 1] = next;
+                    if (next != -1) mask |= 1L << next;
+                    rayMask[direction][index][d] = mask;
+                }
+            }
+        }
+        for (Cell cell : cells) {
+            long lines = 0, adjacent = 0;
+            for (int direction = 0; direction < 6; direction++) {
+                lines |= rayMask[direction][cell.getIndex()][3];
+                adjacent |= rayMask[direction][cell.getIndex()][1];
+            }
+            lineMask[cell.getIndex()] = lines;
+            neighbourMask[cell.getIndex()] = adjacent;
+        }
+        //breadth first from every cell, one ring of cells at a time
+        for (int from = 0; from < cellCount; from++) {
+            Arrays.fill(distance[from], -1);
+            long reached = 1L << from, ring = reached;
+            for (int steps = 0; ring != 0; steps++) {
+                long next = 0;
+                for (; ring != 0; ring &= ring - 1) {
+                    int cell = Long.numberOfTrailingZeros(ring);
+                    distance[from][cell] = steps;
+                    next |= neighbourMask[cell];
+                }
+                ring = next & ~reached;
+                reached |= ring;
+            }
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            for (int r = 0; r <= 3; r++) {
+                long range = 0;
+                for (int other = 0; other < cellCount; other++) {
+                    if (distance[cell][other] != -1 && distance[cell][other] <= r) range |= 1L << other;
+                }
+                rangeMask[r][cell] = range;
+            }
         }
     }
 
-    public void setCellHasTreeInLine(Game game, int left, int sunDirection) {
-        int neighborCellIndexToCheck = this.getNeighbour(sunDirection);
-        //from a certain tree 3 cell is shadowed, so we measure with left values 3,2,1
-        if (neighborCellIndexToCheck != -1 && left >= 1) {
-            Cell neighborCellToCheck = game.getBoardCell(neighborCellIndexToCheck);
-            //cell possible will have shadow
-            neighborCellToCheck.setCountTreesInLine(neighborCellToCheck.getCountTreesInLine() + 1);
-            //go on on that direction max 3 step
-            neighborCellToCheck.setCellHasTreeInLine(game, --left, sunDirection);
+    /*
+    shadow heights for the sun pointing to sunDirection
+    heights[h] gets the cells covered by a shadow at least h high (h = 1..3),
+    a tree of size s collects no sun if its cell is in heights[s]
+     */
+    static void shadows(State state, int sunDirection, long[] heights) {
+        long[][] rays = rayMask[sunDirection];
+        long shadow = 0;
+        for (int size = 3; size >= 1; size--) {
+            for (long trees = state.sizes[size]; trees != 0; trees &= trees - 1) {
+                shadow |= rays[Long.numberOfTrailingZeros(trees)][size];
+            }
+            heights[size] = shadow;
         }
     }
 
-    public int getCompleteHeuristics() {
-        return completeHeuristics;
+    //trees (seeds included) that are in a shadow as high as they are
+    static long shadowedTrees(State state, long[] heights) {
+        return (state.sizes[0] & heights[1]) | (state.sizes[1] & heights[1]) |
+                (state.sizes[2] & heights[2]) | (state.sizes[3] & heights[3]);
     }
+}
 
-    public int getGrowHeuristics() {
-        return growHeuristics;
+/*
+random keys of the Zobrist hash, a position's key is the xor of the keys of its parts
+sun points and scores above the table size share the last key
+ */
+class Zobrist {
+    static final int MAX_DAY = 32, MAX_NUTRIENT = 32, MAX_SUN = 512, MAX_SCORE = 256;
+    static final long[][][] TREE = new long[2][4][State.MAX_CELLS];
+    static final long[] DORMANT = new long[State.MAX_CELLS];
+    static final long[] DAY = new long[MAX_DAY];
+    static final long[] NUTRIENT = new long[MAX_NUTRIENT];
+    static final long[][] SUN = new long[2][MAX_SUN];
+    static final long[][] SCORE = new long[2][MAX_SCORE];
+    static final long[] WAITING = new long[2];
+    static final long[][] RICHNESS = new long[4][State.MAX_CELLS];
+
+    static {
+        SplittableRandom random = new SplittableRandom(2021);
+        for (long[][] owner : TREE) for (long[] size : owner) fill(size, random);
+        fill(DORMANT, random);
+        fill(DAY, random);
+        fill(NUTRIENT, random);
+        for (long[] player : SUN) fill(player, random);
+        for (long[] player : SCORE) fill(player, random);
+        fill(WAITING, random);
+        for (long[] richness : RICHNESS) fill(richness, random);
     }
 
-    public int getSeedHeuristics() {
-        return seedHeuristics;
+    private static void fill(long[] keys, SplittableRandom random) {
+        for (int i = 0; i < keys.length; i++) keys[i] = random.nextLong();
     }
 
-    public void setCompleteHeuristics() {
-        //which tree is shadowed next round, best candidate to cut off
-        completeHeuristics = isShadowedNextRound() ? richness + 1 : richness;
-        //edgecells have less shadow usually, so complete with lowest priority
-        if (edgeCells.contains(this.index)) completeHeuristics = 0;
+    static long sun(int player, int sun) {
+        return SUN[player][Math.max(0, Math.min(sun, MAX_SUN - 1))];
     }
 
-    public void setGrowHeuristics() {
-        //which tree is shadowed next round won't produce sun points, so better not to grow it
-        growHeuristics = isShadowedNextRound() ? richness - 1 : richness;
+    static long score(int player, int score) {
+        return SCORE[player][Math.max(0, Math.min(score, MAX_SCORE - 1))];
     }
 
-    public void setSeedHeuristics() {
-        //important to seed in rich ground but if it's shadowed, then not a great deal
-        seedHeuristics = richness - 2 * countTreesInLine;
+    //key of the board layout, the richness of every cell
+    static long board(State state) {
+        long key = 0;
+        for (int cell = 0; cell < state.cellCount; cell++) key ^= RICHNESS[state.richness[cell]][cell];
+        return key;
     }
+}
 
+/*
+compact game state, every cell is one bit of a long (37 cells fit)
+trees are kept as masks by size (0 = seed), by owner and dormancy,
+cells as masks by richness (0 = unusable), so a copy is just a few longs
+the fields are read directly but written through the methods,
+which keep the Zobrist key in hash up to date
+ */
+class State {
+    static final int ME = 0, OPP = 1;
+    static final int MAX_CELLS = 64;
+
+    final long[] sizes = new long[4];
+    final long[] owners = new long[2];
+    long dormant;
+    final long[] richnessMasks = new long[4];
+    final int[] richness = new int[MAX_CELLS];
+    int cellCount;
+    int day;
+    int nutrient;
+    final int[] sun = new int[2];
+    final int[] score = new int[2];
+    final boolean[] waiting = new boolean[2];
+    long hash;
+
+    public State() {
+        hash = Zobrist.DAY[0] ^ Zobrist.NUTRIENT[0] ^ Zobrist.sun(ME, 0) ^ Zobrist.sun(OPP, 0) ^
+                Zobrist.score(ME, 0) ^ Zobrist.score(OPP, 0);
+    }
+
+    public void setCell(int cellIndex, int cellRichness) {
+        long bit = 1L << cellIndex;
+        for (int r = 0; r < 4; r++) richnessMasks[r] &= ~bit;
+        richnessMasks[cellRichness] |= bit;
+        richness[cellIndex] = cellRichness;
+        cellCount = Math.max(cellCount, cellIndex + 1);
+    }
+
+    public int getRichness(int cellIndex) {
+        return richness[cellIndex];
+    }
 
-    public Cell(int index, int richness, int[] neighbours) {
-        this.index = index;
-        this.richness = richness;
-        this.neighbours = neighbours;
-        this.completeHeuristics = richness;
-        this.growHeuristics = richness;
-        this.seedHeuristics = richness;
+    public void clearTrees() {
+        for (long trees = getTrees(); trees != 0; trees &= trees - 1) {
+            removeTree(Long.numberOfTrailingZeros(trees));
+        }
     }
 
-    @Override
-    public String toString() {
-        return "Cell: index: " + index + " richness: " + richness + " complete heuristics: " +
-                completeHeuristics + " growHeuristics: " + growHeuristics;
+    public void addTree(int cellIndex, int size, int owner, boolean isDormant) {
+        long bit = 1L << cellIndex;
+        sizes[size] |= bit;
+        owners[owner] |= bit;
+        hash ^= Zobrist.TREE[owner][size][cellIndex];
+        if (isDormant) setDormant(cellIndex);
     }
 
-    public boolean isHasNeighborTree() {
-        return hasNeighborTree;
+    public void removeTree(int cellIndex) {
+        int size = getSize(cellIndex);
+        if (size == -1) return;
+        hash ^= Zobrist.TREE[isMine(cellIndex) ? ME : OPP][size][cellIndex];
+        if (isDormant(cellIndex)) hash ^= Zobrist.DORMANT[cellIndex];
+        long keep = ~(1L << cellIndex);
+        sizes[size] &= keep;
+        owners[ME] &= keep;
+        owners[OPP] &= keep;
+        dormant &= keep;
     }
 
-    public void setHasNeighborTree(boolean hasNeighborTree) {
-        this.hasNeighborTree = hasNeighborTree;
+    public void growTree(int cellIndex) {
+        long bit = 1L << cellIndex;
+        int size = getSize(cellIndex);
+        int owner = isMine(cellIndex) ? ME : OPP;
+        hash ^= Zobrist.TREE[owner][size][cellIndex] ^ Zobrist.TREE[owner][size + 1][cellIndex];
+        sizes[size] &= ~bit;
+        sizes[size + 1] |= bit;
     }
 
-    public int getCountTreesInLine() {
-        return countTreesInLine;
+    public void setDormant(int cellIndex) {
+        if (isDormant(cellIndex)) return;
+        dormant |= 1L << cellIndex;
+        hash ^= Zobrist.DORMANT[cellIndex];
     }
 
-    public void setCountTreesInLine(int countTreesInLine) {
-        this.countTreesInLine = countTreesInLine;
+    public void clearDormant() {
+        for (; dormant != 0; dormant &= dormant - 1) {
+            hash ^= Zobrist.DORMANT[Long.numberOfTrailingZeros(dormant)];
+        }
     }
 
-}
+    public void setDay(int day) {
+        hash ^= Zobrist.DAY[this.day % Zobrist.MAX_DAY] ^ Zobrist.DAY[day % Zobrist.MAX_DAY];
+        this.day = day;
+    }
 
-class Tree {
-    private int cellIndex;
-    private int size;
-    private boolean isMine;
+    public void setNutrient(int nutrient) {
+        hash ^= Zobrist.NUTRIENT[this.nutrient % Zobrist.MAX_NUTRIENT] ^ Zobrist.NUTRIENT[nutrient % Zobrist.MAX_NUTRIENT];
+        this.nutrient = nutrient;
+    }
+
+    public void setSun(int player, int sun) {
+        hash ^= Zobrist.sun(player, this.sun[player]) ^ Zobrist.sun(player, sun);
+        this.sun[player] = sun;
+    }
 
-    public int getCellIndex() {
-        return cellIndex;
+    public void setScore(int player, int score) {
+        hash ^= Zobrist.score(player, this.score[player]) ^ Zobrist.score(player, score);
+        this.score[player] = score;
     }
 
-    public int getSize() {
-        return size;
+    public void setWaiting(int player, boolean waiting) {
+        if (this.waiting[player] != waiting) hash ^= Zobrist.WAITING[player];
+        this.waiting[player] = waiting;
     }
 
-    public void setSize(int size) {
-        this.size = size;
+    public long getTrees() {
+        return owners[ME] | owners[OPP];
     }
 
-    public boolean isMine() {
-        return isMine;
+    public boolean hasTree(int cellIndex) {
+        return (getTrees() & (1L << cellIndex)) != 0;
     }
 
-    public Tree(int cellIndex, int size, boolean isMine) {
-        this.cellIndex = cellIndex;
-        this.size = size;
-        this.isMine = isMine;
+    //size of the tree on the cell, -1 if there is none
+    public int getSize(int cellIndex) {
+        long bit = 1L << cellIndex;
+        if ((sizes[0] & bit) != 0) return 0;
+        if ((sizes[1] & bit) != 0) return 1;
+        if ((sizes[2] & bit) != 0) return 2;
+        if ((sizes[3] & bit) != 0) return 3;
+        return -1;
+    }
+
+    public boolean isMine(int cellIndex) {
+        return (owners[ME] & (1L << cellIndex)) != 0;
+    }
+
+    public boolean isDormant(int cellIndex) {
+        return (dormant & (1L << cellIndex)) != 0;
+    }
+
+    public int countTrees(int owner, int size) {
+        return Long.bitCount(sizes[size] & owners[owner]);
+    }
+
+    //the key from scratch, it has to match the incrementally kept one, Replay check=true compares them
+    public long computeHash() {
+        long key = Zobrist.DAY[day % Zobrist.MAX_DAY] ^ Zobrist.NUTRIENT[nutrient % Zobrist.MAX_NUTRIENT];
+        for (int player = ME; player <= OPP; player++) {
+            key ^= Zobrist.sun(player, sun[player]) ^ Zobrist.score(player, score[player]);
+            if (waiting[player]) key ^= Zobrist.WAITING[player];
+            for (int size = 0; size < 4; size++) {
+                for (long trees = sizes[size] & owners[player]; trees != 0; trees &= trees - 1) {
+                    key ^= Zobrist.TREE[player][size][Long.numberOfTrailingZeros(trees)];
+                }
+            }
+        }
+        for (long trees = dormant; trees != 0; trees &= trees - 1) key ^= Zobrist.DORMANT[Long.numberOfTrailingZeros(trees)];
+        return key;
+    }
+
+    public void copyFrom(State other) {
+        System.arraycopy(other.sizes, 0, sizes, 0, 4);
+        System.arraycopy(other.owners, 0, owners, 0, 2);
+        dormant = other.dormant;
+        System.arraycopy(other.richnessMasks, 0, richnessMasks, 0, 4);
+        System.arraycopy(other.richness, 0, richness, 0, other.cellCount);
+        cellCount = other.cellCount;
+        day = other.day;
+        nutrient = other.nutrient;
+        sun[ME] = other.sun[ME];
+        sun[OPP] = other.sun[OPP];
+        score[ME] = other.score[ME];
+        score[OPP] = other.score[OPP];
+        waiting[ME] = other.waiting[ME];
+        waiting[OPP] = other.waiting[OPP];
+        hash = other.hash;
     }
 }
 
+/*
+an action is packed into an int: type | cellIndexFrom << 8 | cellIndexTo << 16, WAIT is 0
+the decision code works on these ints, the protocol text is only made at input and output
+ */
 class Action {
-    private String name;
-    private int cellIndexFrom;
-    private int cellIndexTo;
+    static final int WAIT = 0, SEED = 1, GROW = 2, COMPLETE = 3;
+
+    static int pack(int type, int cellIndexFrom, int cellIndexTo) {
+        return type | cellIndexFrom << 8 | cellIndexTo << 16;
+    }
 
-    public String getName() {
-        return name;
+    static int type(int action) {
+        return action & 0xFF;
     }
 
-    public int getCellIndexFrom() {
-        return cellIndexFrom;
+    static int from(int action) {
+        return (action >>> 8) & 0xFF;
     }
 
-    public int getCellIndexTo() {
-        return cellIndexTo;
+    static int to(int action) {
+        return action >>> 16;
     }
 
-    static Action parse(String action) {
+    //GROW cellIdx | SEED sourceIdx targetIdx | COMPLETE cellIdx | WAIT
+    static String toString(int action) {
+        switch (type(action)) {
+            case WAIT:
+                return "WAIT";
+            case COMPLETE:
+                return "COMPLETE " + from(action);
+            case GROW:
+                return "GROW " + from(action);
+            case SEED:
+                return "SEED " + from(action) + " " + to(action);
+            default:
+                return "Invalid command at action.toString";
+        }
+    }
+
+    //packed action of a protocol line, -1 if unknown
+    static int parse(String action) {
         String[] command = action.split(" ");
         switch (command[0]) {
             case "WAIT":
-                return new Action("WAIT");
+                return WAIT;
             case "COMPLETE":
-                return new Action("COMPLETE", Integer.parseInt(command[1]));
+                return pack(COMPLETE, Integer.parseInt(command[1]), 0);
             case "GROW":
-                return new Action("GROW", Integer.parseInt(command[1]));
+                return pack(GROW, Integer.parseInt(command[1]), 0);
             case "SEED":
-                return new Action("SEED", Integer.parseInt(command[1]), Integer.parseInt(command[2]));
+                return pack(SEED, Integer.parseInt(command[1]), Integer.parseInt(command[2]));
             default:
-                System.err.println("DEBUG: Unknown command parsed!");
-                return null;
+                Log.info("DEBUG: Unknown command parsed!");
+                return -1;
         }
     }
+}
+
+/*
+forward model of the referee rules, it mutates the given state in place
+moves are the packed actions of Action, they are expected to be legal, playTurn saves the state so undo can restore it
+ */
+class Simulator {
+    static final int LAST_DAY = 23;
+    static final int START_NUTRIENT = 20;
+    static final int COMPLETE_COST = 4;
+    private static final int[] GROW_BASE_COST = {1, 3, 7};
+    private static final int[] RICHNESS_BONUS = {0, 0, 2, 4};
+
+    private final State[] undoStack;
+    private int undoSize;
+    private final long[] heights = new long[4];
+
+    public Simulator(int maxUndo) {
+        undoStack = new State[maxUndo];
+        for (int i = 0; i < maxUndo; i++) undoStack[i] = new State();
+    }
+
+    //cost of growing the tree on the cell, depends on how many trees the player has of the next size
+    static int growCost(State state, int player, int cellIndex) {
+        int size = state.getSize(cellIndex);
+        return GROW_BASE_COST[size] + state.countTrees(player, size + 1);
+    }
+
+    static int seedCost(State state, int player) {
+        return state.countTrees(player, 0);
+    }
 
-    public Action(String name) {
-        this.name = name;
+    static int completeScore(State state, int cellIndex) {
+        return state.nutrient + RICHNESS_BONUS[state.richness[cellIndex]];
     }
 
-    public Action(String name, int cellIndexFrom) {
-        this.name = name;
-        this.cellIndexFrom = cellIndexFrom;
+    static boolean isGameOver(State state) {
+        return state.day > LAST_DAY;
     }
 
-    public Action(String name, int cellIndexFrom, int cellIndexTo) {
-        this.name = name;
-        this.cellIndexFrom = cellIndexFrom;
-        this.cellIndexTo = cellIndexTo;
+    //score at the end of the game, every 3 sun points left are worth a point
+    static int finalScore(State state, int player) {
+        return state.score[player] + state.sun[player] / 3;
     }
 
+    //my final score difference in hundredths of a point, the number of trees breaks ties
+    static int finalValue(State state) {
+        int difference = finalScore(state, State.ME) - finalScore(state, State.OPP);
+        return difference * 100 + Long.bitCount(state.owners[State.ME]) - Long.bitCount(state.owners[State.OPP]);
+    }
+
+    //my lead before the end in hundredths of a point: sun as its points, trees of size 1, 2, 3 as 1, 2, 4 points
+    static int estimate(State state) {
+        return estimate(state, State.ME) - estimate(state, State.OPP);
+    }
+
+    private static int estimate(State state, int player) {
+        long own = state.owners[player];
+        return state.score[player] * 100 + state.sun[player] * 100 / 3 + 100 * Long.bitCount(state.sizes[1] & own) +
+                200 * Long.bitCount(state.sizes[2] & own) + 400 * Long.bitCount(state.sizes[3] & own);
+    }
+
+    //first day of a new game, the trees are already placed
+    void startGame(State state) {
+        state.setDay(0);
+        state.setNutrient(START_NUTRIENT);
+        for (int player = State.ME; player <= State.OPP; player++) {
+            state.setSun(player, 0);
+            state.setScore(player, 0);
+            state.setWaiting(player, false);
+        }
+        state.clearDormant();
+        collectSun(state);
+    }
+
+    //both players act at the same time, a player already waiting is not asked again
+    void playTurn(State state, int myMove, int oppMove) {
+        if (undoSize == undoStack.length) throw new IllegalStateException("Simulator undo stack is full");
+        undoStack[undoSize++].copyFrom(state);
+        play(state, myMove, oppMove);
+    }
+
+    void undo(State state) {
+        state.copyFrom(undoStack[--undoSize]);
+    }
+
+    void clearUndo() {
+        undoSize = 0;
+    }
+
+    //same as playTurn without saving the state, for playouts on a scratch copy
+    void play(State state, int myMove, int oppMove) {
+        if (state.waiting[State.ME]) myMove = Action.WAIT;
+        if (state.waiting[State.OPP]) oppMove = Action.WAIT;
+
+        //seeding the same cell at the same time: nothing is planted, no sun is spent
+        if (Action.type(myMove) == Action.SEED && Action.type(oppMove) == Action.SEED && Action.to(myMove) == Action.to(oppMove)) {
+            state.setDormant(Action.from(myMove));
+            state.setDormant(Action.from(oppMove));
+            myMove = oppMove = -1;
+        }
+
+        //both completes get the same nutrient, it decays afterwards
+        int nutrient = state.nutrient;
+        apply(state, State.ME, myMove);
+        apply(state, State.OPP, oppMove);
+        if (Action.type(myMove) == Action.COMPLETE) nutrient--;
+        if (Action.type(oppMove) == Action.COMPLETE) nutrient--;
+        state.setNutrient(Math.max(0, nutrient));
+
+        if (state.waiting[State.ME] && state.waiting[State.OPP]) endDay(state);
+    }
+
+    private void apply(State state, int player, int move) {
+        if (move == -1) return;
+        int from = Action.from(move);
+        switch (Action.type(move)) {
+            case Action.WAIT:
+                state.setWaiting(player, true);
+                break;
+            case Action.SEED:
+                state.setSun(player, state.sun[player] - seedCost(state, player));
+                state.setDormant(from);
+                state.addTree(Action.to(move), 0, player, true);
+                break;
+            case Action.GROW:
+                state.setSun(player, state.sun[player] - growCost(state, player, from));
+                state.growTree(from);
+                state.setDormant(from);
+                break;
+            case Action.COMPLETE:
+                state.setSun(player, state.sun[player] - COMPLETE_COST);
+                state.setScore(player, state.score[player] + completeScore(state, from));
+                state.removeTree(from);
+                break;
+        }
+    }
+
+    private void endDay(State state) {
+        state.setDay(state.day + 1);
+        state.clearDormant();
+        state.setWaiting(State.ME, false);
+        state.setWaiting(State.OPP, false);
+        if (!isGameOver(state)) collectSun(state);
+    }
+
+    //the sun moves every day, trees out of shadow give as many points as their size
+    private void collectSun(State state) {
+        Hex.shadows(state, state.day % 6, heights);
+        long sunny = ~Hex.shadowedTrees(state, heights);
+        for (int player = State.ME; player <= State.OPP; player++) {
+            long trees = state.owners[player] & sunny;
+            state.setSun(player, state.sun[player] + Long.bitCount(state.sizes[1] & trees) +
+                    2 * Long.bitCount(state.sizes[2] & trees) +
+                    3 * Long.bitCount(state.sizes[3] & trees));
+        }
+    }
+}
+
+/*
+legal moves of a player from a State, written into a reusable int buffer
+same rules as the referee: no action with a dormant tree, seeds reach as far as
+the tree is big and only land on empty usable cells, every action must be affordable
+ */
+class MoveGen {
+    static final int MAX_MOVES = 1024;
+
+    //returns the number of moves, WAIT is always the first one
+    static int generate(State state, int player, int[] out) {
+        int count = 0;
+        out[count++] = Action.WAIT;
+        if (state.waiting[player]) return count;
+        int sun = state.sun[player];
+        int seedCost = Simulator.seedCost(state, player);
+        long empty = ~state.getTrees() & ~state.richnessMasks[0] & Hex.boardMask;
+        for (long trees = state.owners[player] & ~state.dormant; trees != 0; trees &= trees - 1) {
+            int cell = Long.numberOfTrailingZeros(trees);
+            int size = state.getSize(cell);
+            if (size == 3 && sun >= Simulator.COMPLETE_COST)
+                out[count++] = Action.pack(Action.COMPLETE, cell, 0);
+            if (size < 3 && sun >= Simulator.growCost(state, player, cell))
+                out[count++] = Action.pack(Action.GROW, cell, 0);
+            if (size >= 1 && sun >= seedCost) {
+                for (long targets = Hex.rangeMask[size][cell] & empty; targets != 0 && count < out.length; targets &= targets - 1) {
+                    out[count++] = Action.pack(Action.SEED, cell, Long.numberOfTrailingZeros(targets));
+                }
+            }
+        }
+        return count;
+    }
+}
+
+/*
+constants of the heuristic rules as one vector, the defaults are the hand tuned values
+loaded at startup with params=<file> of name=value lines, or inline as params=name=value,name=value;
+names left out keep their default, lines starting with # are skipped
+ */
+class Params {
+    static final int COMPLETE_FROM_DAY = 0; //worth to complete shadowed 3trees
+    static final int COMPLETE_ALL_FROM_DAY = 1; //every 3tree should be completed
+    static final int HORIZON_DAY = 2; //the grow and complete rules count the days left until this one
+    static final int LAST_GROW3_DAY = 3; //growing a 3tree on this day only pays on rich cells
+    static final int GROW2_COST_DIVISOR = 4; //grow a 2tree if it costs at most growCost3Tree / divisor * multiplier
+    static final int GROW2_COST_MULTIPLIER = 5;
+    static final int GROW1_COST_DIVISOR = 6; //grow a 1tree if it costs at most growCost2Tree / divisor
+    static final int SEED_RICHNESS_WEIGHT = 7;
+    static final int SEED_LINE_WEIGHT = 8; //trees in line shadow the seed
+    static final int EDGE_COMPLETE_HEURISTICS = 9; //edgecells have less shadow usually
+    static final int SUN_FORECAST = 10; //1: the grow and complete rules use the SunForecast instead of days * size
+
+    static final String[] NAMES = {"completeFromDay", "completeAllFromDay", "horizonDay", "lastGrow3Day",
+            "grow2CostDivisor", "grow2CostMultiplier", "grow1CostDivisor", "seedRichnessWeight", "seedLineWeight",
+            "edgeCompleteHeuristics", "sunForecast"};
+    static final int[] DEFAULTS = {13, 18, 23, 22, 3, 2, 2, 1, 2, 0, 0};
+    static final int[] MIN = {0, 0, 18, 0, 1, 1, 1, 0, 0, -3, 0};
+    static final int[] MAX = {23, 23, 28, 23, 6, 6, 4, 4, 4, 4, 1};
+    //19, 22, 25, 28, 31, 34
+    static final long DEFAULT_EDGE_CELLS = 1L << 19 | 1L << 22 | 1L << 25 | 1L << 28 | 1L << 31 | 1L << 34;
+
+    private final int[] values = DEFAULTS.clone();
+    //cells completed with the edge heuristics, given as edgeCells=19 22 25 ..., not tuned
+    private long edgeCells = DEFAULT_EDGE_CELLS;
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        values[index] = Math.max(MIN[index], Math.min(MAX[index], value));
+    }
+
+    public boolean isEdgeCell(int cellIndex) {
+        return (edgeCells & (1L << cellIndex)) != 0;
+    }
+
+    //empty for the defaults, a name=value list if it has a =, a file otherwise
+    static Params load(String source) {
+        Params params = new Params();
+        if (source.isEmpty()) return params;
+        if (source.contains("=")) {
+            for (String entry : source.split(",")) params.parse(entry);
+            return params;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(source))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) params.parse(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return params;
+    }
+
+    private void parse(String entry) {
+        entry = entry.trim();
+        if (entry.isEmpty() || entry.startsWith("#")) return;
+        int separator = entry.indexOf('=');
+        String name = entry.substring(0, separator).trim();
+        String value = entry.substring(separator + 1).trim();
+        if (name.equals("edgeCells")) {
+            edgeCells = 0;
+            for (String cell : value.split("\\s+")) edgeCells |= 1L << Integer.parseInt(cell);
+            return;
+        }
+        int index = Arrays.asList(NAMES).indexOf(name);
+        if (index == -1) throw new IllegalArgumentException("Unknown parameter: " + name);
+        //the tuner's checkpoints keep fractions
+        set(index, (int) Math.round(Double.parseDouble(value)));
+    }
+
+    //the inline format, it can be given back as params=
     @Override
     public String toString() {
-        switch (name) {
-            case "WAIT":
-                return "WAIT";
-            case "COMPLETE":
-                return "COMPLETE " + cellIndexFrom;
-            case "GROW":
-                return "GROW " + cellIndexFrom;
-            case "SEED":
-                return "SEED " + cellIndexFrom + " " + cellIndexTo;
-            default:
-                return "Invalid command at cell.toString";
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            if (i > 0) text.append(',');
+            text.append(NAMES[i]).append('=').append(values[i]);
+        }
+        return text.toString();
+    }
+}
+
+/*
+sun points a tree would collect on the remaining days if the forest stayed as it is, for every size
+it could have; the shadows are computed once for each of the 6 sun directions and weighted by how
+many of the remaining days the sun points that way (day % 6); lookups are O(1)
+it is not incremental: when the day or any size mask changed, our own actions within the day too,
+all 6 shadow passes are rebuilt, the same day with the same trees costs nothing
+ */
+class SunForecast {
+    private final int[][] income = new int[4][State.MAX_CELLS];
+    private final int[] daysPerDirection = new int[6];
+    private final long[] heights = new long[4];
+    private final long[] sizes = new long[4];
+    private int day = -1, horizon = -1;
+
+    //days after today until the horizon day
+    public void update(State state, int horizonDay) {
+        if (state.day == day && horizonDay == horizon && sizes[1] == state.sizes[1] && sizes[2] == state.sizes[2] &&
+                sizes[3] == state.sizes[3]) return;
+        day = state.day;
+        horizon = horizonDay;
+        System.arraycopy(state.sizes, 0, sizes, 0, 4);
+        Arrays.fill(daysPerDirection, 0);
+        for (int d = day + 1; d <= horizonDay; d++) daysPerDirection[d % 6]++;
+        for (int size = 1; size <= 3; size++) Arrays.fill(income[size], 0);
+        for (int direction = 0; direction < 6; direction++) {
+            int days = daysPerDirection[direction];
+            if (days == 0) continue;
+            Hex.shadows(state, direction, heights);
+            for (int size = 1; size <= 3; size++) {
+                for (long sunny = Hex.boardMask & ~heights[size]; sunny != 0; sunny &= sunny - 1) {
+                    income[size][Long.numberOfTrailingZeros(sunny)] += days * size;
+                }
+            }
         }
     }
+
+    public int get(int cellIndex, int size) {
+        return income[size][cellIndex];
+    }
 }
 
 class Game {
+    private final Params params;
     private List<Cell> board = new ArrayList<>();
-    private List<Action> possibleActions = new ArrayList<>();
-    private List<Tree> trees = new ArrayList<>();
-    private int day;
-    private int nutrient;
-    private int mySunPoints, oppSunPoints;
-    private int myScore, oppScore;
-    private boolean oppIsWaiting;
+    private final int[] possibleActions = new int[MoveGen.MAX_MOVES];
+    private int possibleActionCount;
+    private State state = new State();
     private int sunDirectionTo;
     private int dailySpGenerationNextRound;
+    private final long[] shadowHeights = new long[4];
+    private final HeuristicPolicy policy;
+    private long shadowedNextRound;
+    private long hasNeighborTree;
+    //heuristics by cell index, higher is better
+    private final int[] countTreesInLine = new int[State.MAX_CELLS]; //possible shadows
+    private final int[] completeHeuristics = new int[State.MAX_CELLS];
+    private final int[] growHeuristics = new int[State.MAX_CELLS];
+    private final int[] seedHeuristics = new int[State.MAX_CELLS];
+    //inputs of the last heuristics update
+    private long heuristicsTrees, heuristicsMyTrees, heuristicsShadowed;
+    private boolean heuristicsReady;
 
     /*
      2 1
@@ -238,96 +760,86 @@ class Game {
      4 5
      */
 
-    public void addBoardCell(Cell cell) {
-        board.add(cell);
+    public Game() {
+        this(new Params());
     }
 
-    public List<Cell> getBoardCells() {
-        return new ArrayList<>(board);
+    public Game(Params params) {
+        this.params = params;
+        policy = new HeuristicPolicy(params);
     }
 
-    public void clearBoard() {
-        board.clear();
+    public void addBoardCell(Cell cell) {
+        board.add(cell);
+        state.setCell(cell.getIndex(), cell.getRichness());
     }
 
-    public void addPossibleAction(Action action) {
-        possibleActions.add(action);
+    public List<Cell> getBoardCells() {
+        return new ArrayList<>(board);
     }
 
-    public List<Action> getPossibleActions() {
-        return new ArrayList<>(possibleActions);
+    public boolean isPossibleAction(int action) {
+        for (int i = 0; i < possibleActionCount; i++) {
+            if (possibleActions[i] == action) return true;
+        }
+        return false;
     }
 
-    public void clearPossibleActions() {
-        possibleActions.clear();
+    //my legal actions from the state instead of the referee's list
+    public void generatePossibleActions() {
+        possibleActionCount = MoveGen.generate(state, State.ME, possibleActions);
     }
 
-    public void addTree(Tree tree) {
-        trees.add(tree);
+    public State getState() {
+        return state;
     }
 
-    public List<Tree> getTrees() {
-        return new ArrayList<>(trees);
+    public void addTree(int cellIndex, int size, boolean isMine, boolean isDormant) {
+        state.addTree(cellIndex, size, isMine ? State.ME : State.OPP, isDormant);
     }
 
     public void clearTrees() {
-        trees.clear();
+        state.clearTrees();
     }
 
     public int getDay() {
-        return day;
+        return state.day;
     }
 
     public void setDay(int day) {
-        this.day = day;
+        state.setDay(day);
     }
 
     public int getNutrient() {
-        return nutrient;
+        return state.nutrient;
     }
 
     public void setNutrient(int nutrient) {
-        this.nutrient = nutrient;
+        state.setNutrient(nutrient);
     }
 
     public int getMySunPoints() {
-        return mySunPoints;
+        return state.sun[State.ME];
     }
 
     public void setMySunPoints(int mySunPoints) {
-        this.mySunPoints = mySunPoints;
-    }
-
-    public int getOppSunPoints() {
-        return oppSunPoints;
+        state.setSun(State.ME, mySunPoints);
     }
 
     public void setOppSunPoints(int oppSunPoints) {
-        this.oppSunPoints = oppSunPoints;
-    }
-
-    public int getMyScore() {
-        return myScore;
+        state.setSun(State.OPP, oppSunPoints);
     }
 
     public void setMyScore(int myScore) {
-        this.myScore = myScore;
-    }
-
-    public int getOppScore() {
-        return oppScore;
+        state.setScore(State.ME, myScore);
     }
 
     public void setOppScore(int oppScore) {
-        this.oppScore = oppScore;
-    }
-
-    public boolean isOppIsWaiting() {
-        return oppIsWaiting;
+        state.setScore(State.OPP, oppScore);
     }
 
     public void setOppIsWaiting(boolean oppIsWaiting) {
-        this.oppIsWaiting = oppIsWaiting;
+        state.setWaiting(State.OPP, oppIsWaiting);
     }
 
     public void setSunDirectionTo(int sunDirectionTo) {
@@ -338,20 +850,6 @@ class Game {
         return sunDirectionTo;
     }
 
-    public Cell getBoardCell(int cellIndex) {
-        for (Cell cell : board) {
-            if (cell.getIndex() == cellIndex) return cell;
-        }
-        return null;
-    }
-
-    public Tree getTree(int cellIndex) {
-        for (Tree tree : trees) {
-            if (tree.getCellIndex() == cellIndex) return tree;
-        }
-        return null;
-    }
-
     public int getDailySpGeneration() {
         return dailySpGenerationNextRound;
     }
@@ -362,54 +860,31 @@ class Game {
     so neighbors toward direction 1 should be shadowed
     seed does not have shadow
      */
-    public void setShadows() {
-        //set shadows from 1trees
-        for (Cell cell : board) {
-            if (this.getTree(cell.getIndex()) != null && this.getTree(cell.getIndex()).getSize() == 1) {
-                //set the shadowed cells
-                cell.setCellShadowNextRound(this, 1, 1);
-            }
-        }
-
-        //set shadows from 2trees
-        for (Cell cell : board) {
-            if (this.getTree(cell.getIndex()) != null && this.getTree(cell.getIndex()).getSize() == 2) {
-                //set the shadowed cells
-                cell.setCellShadowNextRound(this, 2, 2);
-            }
-        }
+    public boolean isShadowedNextRound(int cellIndex) {
+        return (shadowedNextRound & (1L << cellIndex)) != 0;
+    }
 
-        //set shadows from 3trees
-        for (Cell cell : board) {
-            if (this.getTree(cell.getIndex()) != null && this.getTree(cell.getIndex()).getSize() == 3) {
-                //set the shadowed cells
-                cell.setCellShadowNextRound(this, 3, 3);
-            }
-        }
+    public boolean hasNeighborTree(int cellIndex) {
+        return (hasNeighborTree & (1L << cellIndex)) != 0;
+    }
 
-        updateHeuristics();
+    public int getSeedHeuristics(int cellIndex) {
+        return seedHeuristics[cellIndex];
     }
 
-    public void clearShadows() {
-        for (Cell cell : board) {
-            cell.setShadowedNextRound(false);
-        }
+    //the heuristics depend on the shadows, updateHeuristics comes after this
+    public void setShadows() {
+        Hex.shadows(state, (sunDirectionTo + 1) % 6, shadowHeights);
+        shadowedNextRound = Hex.shadowedTrees(state, shadowHeights);
     }
 
     //set neighbor trees among my trees as cell property, it comes good at seeding
-    public void setNeighborTrees() {
-        //first delete if a cell had neighbor trees
-        for (Cell cell : board) {
-            cell.setHasNeighborTree(false);
-        }
-
-        //update the cells
-        for (Cell cell : board) {
-            for (Tree tree : trees) {
-                if (Arrays.stream(cell.getNeighbours()).anyMatch(i -> i == tree.getCellIndex() && tree.isMine() && tree.getSize() >= 0)) {
-                    cell.setHasNeighborTree(true);
-                }
-            }
+    void setNeighborTrees(long dirty) {
+        long myTrees = state.owners[State.ME];
+        for (; dirty != 0; dirty &= dirty - 1) {
+            int index = Long.numberOfTrailingZeros(dirty);
+            if ((myTrees & Hex.neighbourMask[index]) != 0) hasNeighborTree |= 1L << index;
+            else hasNeighborTree &= ~(1L << index);
         }
     }
 
@@ -417,234 +892,1403 @@ class Game {
     set cells where trees in line causing possible shadow
     this will be used at seeding heuristics
     */
-    public void setTreesPossibleShadowedCells() {
-        //first delete if a cell had neighbor trees
-        for (Cell cell : board) {
-            cell.setCountTreesInLine(0);
-        }
-
-        //update the cells
-        for (Cell cell : board) {
-            if (this.getTree(cell.getIndex()) != null) {
-                //check every possible sun direction
-                for (int sunDirection = 0; sunDirection < 6; sunDirection++) {
-                    cell.setCellHasTreeInLine(this, 3, sunDirection);
-                }
-            }
+    private void setTreesPossibleShadowedCells(long dirty) {
+        //a tree in line at most 3 cells away shadows the cell in one of the sun directions
+        long trees = state.getTrees();
+        for (; dirty != 0; dirty &= dirty - 1) {
+            int index = Long.numberOfTrailingZeros(dirty);
+            countTreesInLine[index] = Long.bitCount(trees & Hex.lineMask[index]);
         }
     }
 
+    /*
+    recompute the heuristics of the cells whose inputs changed since the last update:
+    a tree appeared or disappeared in line with the cell, one of my trees next to it,
+    or its shadow for the next round; a second call in the same turn does nothing
+     */
     public void updateHeuristics() {
+        long trees = state.getTrees();
+        long myTrees = state.owners[State.ME];
+        long dirty = shadowedNextRound ^ heuristicsShadowed;
+        for (long changed = myTrees ^ heuristicsMyTrees; changed != 0; changed &= changed - 1) {
+            dirty |= Hex.neighbourMask[Long.numberOfTrailingZeros(changed)];
+        }
+        for (long changed = trees ^ heuristicsTrees; changed != 0; changed &= changed - 1) {
+            dirty |= Hex.lineMask[Long.numberOfTrailingZeros(changed)];
+        }
+        if (!heuristicsReady) {
+            dirty = Hex.boardMask;
+            heuristicsReady = true;
+        }
+        heuristicsTrees = trees;
+        heuristicsMyTrees = myTrees;
+        heuristicsShadowed = shadowedNextRound;
+        if (dirty == 0) return;
+        Log.debug("Heuristics recomputed cells: ", Long.bitCount(dirty));
+
         //this 2 is good to seed heuristics
-        setNeighborTrees();
-        setTreesPossibleShadowedCells();
+        setNeighborTrees(dirty);
+        setTreesPossibleShadowedCells(dirty);
+
+        //update the heuristics for the changed cells
+        for (; dirty != 0; dirty &= dirty - 1) {
+            int index = Long.numberOfTrailingZeros(dirty);
+            completeHeuristics[index] = policy.completeHeuristics(state, index, shadowedNextRound);
+            growHeuristics[index] = HeuristicPolicy.growHeuristics(state, index, shadowedNextRound);
+            seedHeuristics[index] = policy.seedHeuristics(state, index, countTreesInLine[index]);
+        }
+    }
 
-        //update the heuristics for every cell
-        for (Cell cell : board) {
-            cell.setCompleteHeuristics();
-            cell.setGrowHeuristics();
-            cell.setSeedHeuristics();
+    //the next update recomputes every cell, for benchmarks
+    void invalidateHeuristics() {
+        heuristicsReady = false;
+    }
+
+    //my trees of the given size with their heuristics
+    private void logTrees(int size) {
+        Log.debug("==== " + size + " trees =====");
+        for (long trees = state.sizes[size] & state.owners[State.ME]; trees != 0; trees &= trees - 1) {
+            int index = Long.numberOfTrailingZeros(trees);
+            Log.debug("Cell: index: " + index + " richness: " + state.richness[index] + " complete heuristics: " +
+                    completeHeuristics[index] + " growHeuristics: " + growHeuristics[index]);
         }
     }
 
-    //4 action possible COMPLETE, GROW, SEED, WAIT
-    Action getNextAction() {
+    /*
+    4 action possible COMPLETE, GROW, SEED, WAIT
+    the rules of HeuristicPolicy on my legal actions, with the heuristics of updateHeuristics
+     */
+    int getNextAction() {
         //update all 3 heuristics
         updateHeuristics();
 
         //count my trees
-        int count3TreesAll = (int) trees.stream().filter(tree -> tree.getSize() == 3 && tree.isMine()).count();
-        int count2TreesAll = (int) trees.stream().filter(tree -> tree.getSize() == 2 && tree.isMine()).count();
-        int count1TreesAll = (int) trees.stream().filter(tree -> tree.getSize() == 1 && tree.isMine()).count();
+        int count3TreesAll = state.countTrees(State.ME, 3);
+        int count2TreesAll = state.countTrees(State.ME, 2);
+        int count1TreesAll = state.countTrees(State.ME, 1);
 
         int growCost3Tree = 7 + count3TreesAll;
         int growCost2Tree = 3 + count2TreesAll;
         int growCost1Tree = 1 + count1TreesAll;
 
-        System.err.println("=== Costs ===");
-        System.err.println("3Tree cost: " + growCost3Tree);
-        System.err.println("2Tree cost: " + growCost2Tree);
-        System.err.println("1Tree cost: " + growCost1Tree);
-        System.err.println("Complete cost: " + 4);
-        System.err.println("Seed cost: " + 0);
-        System.err.println("Nutrition value we got: " + this.getNutrient());
+        Log.debug("=== Costs ===");
+        Log.debug("3Tree cost: ", growCost3Tree);
+        Log.debug("2Tree cost: ", growCost2Tree);
+        Log.debug("1Tree cost: ", growCost1Tree);
+        Log.debug("Complete cost: ", 4);
+        Log.debug("Seed cost: ", 0);
+        Log.debug("Nutrition value we got: ", this.getNutrient());
 
         //not shadowed for SP calculation
-        int count3TreesNotShadowedNextRound = 0, count2TreesNotShadowedNextRound = 0, count1TreesNotShadowedNextRound = 0;
-        for (Cell cell : board) {
-            if (this.getTree(cell.getIndex()) != null && this.getTree(cell.getIndex()).isMine() && !cell.isShadowedNextRound()) {
-                switch (this.getTree(cell.getIndex()).getSize()) {
-                    case 3:
-                        count3TreesNotShadowedNextRound++;
-                        break;
-                    case 2:
-                        count2TreesNotShadowedNextRound++;
-                        break;
-                    case 1:
-                        count1TreesNotShadowedNextRound++;
-                        break;
-                }
+        long myTrees = state.owners[State.ME];
+        long notShadowed = myTrees & ~shadowedNextRound;
+        int count3TreesNotShadowedNextRound = Long.bitCount(notShadowed & state.sizes[3]);
+        int count2TreesNotShadowedNextRound = Long.bitCount(notShadowed & state.sizes[2]);
+        int count1TreesNotShadowedNextRound = Long.bitCount(notShadowed & state.sizes[1]);
+
+        int countSeeds = state.countTrees(State.ME, 0);
+
+        dailySpGenerationNextRound = count3TreesNotShadowedNextRound * 3 + count2TreesNotShadowedNextRound * 2 + count1TreesNotShadowedNextRound * 1;
+
+        Log.debug("!!! All 3tree count: ", count3TreesAll);
+        Log.debug("!!! Not shadowed 3tree count: ", count3TreesNotShadowedNextRound);
+        Log.debug("!!! Not shadowed 2tree count: ", count2TreesNotShadowedNextRound);
+        Log.debug("!!! Not shadowed 1tree count: ", count1TreesNotShadowedNextRound);
+        Log.debug("!!! seed count: ", countSeeds);
+
+        if (Log.isDebug()) {
+            logTrees(3);
+            for (long trees = myTrees; trees != 0; trees &= trees - 1) {
+                int index = Long.numberOfTrailingZeros(trees);
+                Log.debug("Cell ID: " + index + " GROW H: " + growHeuristics[index]);
             }
+            logTrees(2);
+            logTrees(1);
+            logTrees(0);
         }
 
-        int countSeeds = (int) trees.stream().filter(tree -> tree.getSize() == 0 && tree.isMine()).count();
+        //the rules are the HeuristicPolicy's, on the heuristics kept here
+        int action = policy.choose(state, State.ME, possibleActions, possibleActionCount, shadowedNextRound,
+                completeHeuristics, growHeuristics, seedHeuristics);
+        if (Log.isDebug()) Log.debug("===== Rule ==== " + Action.toString(action));
+        return action;
+    }
+}
 
-        dailySpGenerationNextRound = count3TreesNotShadowedNextRound * 3 + count2TreesNotShadowedNextRound * 2 + count1TreesNotShadowedNextRound * 1;
+//end of the thinking time of a turn, the engines poll it
+class Deadline {
+    private final long end;
+
+    public Deadline(long end) {
+        this.end = end;
+    }
+
+    public boolean isOver() {
+        return System.nanoTime() >= end;
+    }
+}
+
+/*
+timing of the turns: start() when the first number of the turn arrived, then mark() after every phase
+the durations are kept for the whole game and summarized with the GC pauses at the end
+a turn using more than 90% of the referee's limit is a near timeout
+ */
+class TurnTimer {
+    static final int PARSE = 0, SHADOWS = 1, HEURISTICS = 2, DECISION = 3, OUTPUT = 4;
+    private static final String[] PHASES = {"parse", "shadows", "heuristics", "decision", "output"};
+
+    private long[][] durations = new long[PHASES.length][128];
+    private long[] totals = new long[128];
+    private int turns;
+    private long turnStart, lastMark;
+    private int nearTimeouts;
+    private int turnsWithGc;
+    private long gcCountAtStart;
+    private final List<java.lang.management.GarbageCollectorMXBean> collectors =
+            java.lang.management.ManagementFactory.getGarbageCollectorMXBeans();
+
+    public void start() {
+        turnStart = lastMark = System.nanoTime();
+        gcCountAtStart = gcCount();
+        if (turns == totals.length) {
+            totals = Arrays.copyOf(totals, 2 * turns);
+            for (int phase = 0; phase < PHASES.length; phase++) durations[phase] = Arrays.copyOf(durations[phase], 2 * turns);
+        }
+    }
+
+    public long getTurnStart() {
+        return turnStart;
+    }
+
+    public void mark(int phase) {
+        long now = System.nanoTime();
+        durations[phase][turns] = now - lastMark;
+        lastMark = now;
+    }
+
+    //duration of the phase in the current turn
+    public long getDuration(int phase) {
+        return durations[phase][turns];
+    }
+
+    //the turn is over, limit is the referee's time for it
+    public void end(long limit) {
+        long total = lastMark - turnStart;
+        totals[turns++] = total;
+        if (total > limit / 10 * 9) nearTimeouts++;
+        if (gcCount() != gcCountAtStart) turnsWithGc++;
+    }
+
+    private long gcCount() {
+        long count = 0;
+        for (java.lang.management.GarbageCollectorMXBean collector : collectors) count += Math.max(0, collector.getCollectionCount());
+        return count;
+    }
+
+    //p50/p99/max of every phase in microseconds, the GC totals and the near timeouts
+    public void logSummary() {
+        if (!Log.isInfo() || turns == 0) return;
+        Log.info("===== timing of " + turns + " turns (us) =====");
+        for (int phase = 0; phase < PHASES.length; phase++) logPercentiles(PHASES[phase], durations[phase]);
+        logPercentiles("total", totals);
+        long gcTime = 0;
+        for (java.lang.management.GarbageCollectorMXBean collector : collectors) gcTime += Math.max(0, collector.getCollectionTime());
+        Log.info("GC: " + gcCount() + " collections " + gcTime + " ms, turns with GC: " + turnsWithGc);
+        Log.info("Near timeouts: ", nearTimeouts);
+    }
+
+    private void logPercentiles(String name, long[] values) {
+        long[] sorted = Arrays.copyOf(values, turns);
+        Arrays.sort(sorted);
+        Log.info(name + " p50: " + sorted[(turns - 1) / 2] / 1000 + " p99: " + sorted[(turns - 1) * 99 / 100] / 1000 +
+                " max: " + sorted[turns - 1] / 1000);
+    }
+}
+
+//decides the next packed action for the current turn before the deadline
+//-1 or an illegal action makes the Player fall back to the heuristic rules
+interface Engine {
+    int getNextAction(Game game, Deadline deadline);
+}
+
+//the rule based getNextAction of Game
+class HeuristicEngine implements Engine {
+    @Override
+    public int getNextAction(Game game, Deadline deadline) {
+        return game.getNextAction();
+    }
+}
 
-        System.err.println("!!! All 3tree count: " + count3TreesAll);
-        System.err.println("!!! Not shadowed 3tree count: " + count3TreesNotShadowedNextRound);
-        System.err.println("!!! Not shadowed 2tree count: " + count2TreesNotShadowedNextRound);
-        System.err.println("!!! Not shadowed 1tree count: " + count1TreesNotShadowedNextRound);
-        System.err.println("!!! seed count: " + countSeeds);
-
-        Comparator<Cell> compareByCompleteHeuristics = (c1, c2) -> c2.getCompleteHeuristics() - c1.getCompleteHeuristics();
-        Comparator<Cell> compareByGrowHeuristics = (c1, c2) -> c2.getGrowHeuristics() - c1.getGrowHeuristics();
-        Comparator<Cell> compareBySeedHeuristics = (c1, c2) -> c2.getSeedHeuristics() - c1.getSeedHeuristics();
-
-        //=========== COMPLETE ===========
-        Collections.sort(board, compareByCompleteHeuristics);
-        System.err.println("==== Sorted 3 trees =====");
-        board.stream().filter(
-                (Cell cell) -> this.getTree(cell.getIndex()) != null &&
-                        this.getTree(cell.getIndex()).isMine() &&
-                        this.getTree(cell.getIndex()).getSize() == 3)
-                .forEach(System.err::println);
-
-        List<Action> completeActions = possibleActions.stream().filter(action -> action.getName().equals("COMPLETE")).collect(Collectors.toList());
-
-        //from day 18 every 3Trees should be completed
-        if (day >= 18)
-            for (Cell cell : board) {
-                for (Action action : completeActions) {
-                    //if nutritient=0 or 1 and cell richness is 1 than not effective to complete
-                    // cost 4 SP and got 1 or 0 GP, although 3SP=1GP at the end
-                    int gPEarned = 0;
-                    if (cell.getRichness() > 1)
-                        gPEarned = (int) Math.pow(2, cell.getRichness() - 1);
-                    if (action.getCellIndexFrom() == cell.getIndex() && ((nutrient + gPEarned) > (((23 - day) * 3) - 4) / 3)
-                            && mySunPoints >= 4) {
-                        System.err.println("===== Completed 3tree ==== " + cell.getIndex());
-                        return action;
+/*
+the rules of Game.getNextAction working on a State for either player, they exist only here
+it picks from a list of legal moves, used by Game for my turn, for playouts and as search prior
+every rule takes the legal action with the best heuristics in one pass, ties go to the action listed first
+ */
+class HeuristicPolicy {
+    private final Params params;
+    private final long[] heights = new long[4];
+    private final SunForecast sunForecast = new SunForecast();
+    private final int[] completeHeuristics = new int[State.MAX_CELLS];
+    private final int[] growHeuristics = new int[State.MAX_CELLS];
+    private final int[] seedHeuristics = new int[State.MAX_CELLS];
+
+    public HeuristicPolicy(Params params) {
+        this.params = params;
+    }
+
+    //which tree is shadowed next round, best candidate to cut off
+    //edgecells have less shadow usually, so complete with lowest priority
+    int completeHeuristics(State state, int cell, long shadowed) {
+        if (params.isEdgeCell(cell)) return params.get(Params.EDGE_COMPLETE_HEURISTICS);
+        return (shadowed & (1L << cell)) != 0 ? state.richness[cell] + 1 : state.richness[cell];
+    }
+
+    //which tree is shadowed next round won't produce sun points, so better not to grow it
+    static int growHeuristics(State state, int cell, long shadowed) {
+        return (shadowed & (1L << cell)) != 0 ? state.richness[cell] - 1 : state.richness[cell];
+    }
+
+    //important to seed in rich ground but if trees in line can shadow it, then not a great deal
+    int seedHeuristics(State state, int cell, int treesInLine) {
+        return params.get(Params.SEED_RICHNESS_WEIGHT) * state.richness[cell] - params.get(Params.SEED_LINE_WEIGHT) * treesInLine;
+    }
+
+    //the heuristics of the cells the moves use, then the rules
+    int choose(State state, int player, int[] moves, int count) {
+        Hex.shadows(state, (state.day + 1) % 6, heights);
+        long shadowed = Hex.shadowedTrees(state, heights);
+        long trees = state.getTrees();
+        for (int i = 0; i < count; i++) {
+            int from = Action.from(moves[i]);
+            switch (Action.type(moves[i])) {
+                case Action.COMPLETE:
+                    completeHeuristics[from] = completeHeuristics(state, from, shadowed);
+                    break;
+                case Action.GROW:
+                    growHeuristics[from] = growHeuristics(state, from, shadowed);
+                    break;
+                case Action.SEED:
+                    int to = Action.to(moves[i]);
+                    seedHeuristics[to] = seedHeuristics(state, to, Long.bitCount(trees & Hex.lineMask[to]));
+                    break;
+            }
+        }
+        return choose(state, player, moves, count, shadowed, completeHeuristics, growHeuristics, seedHeuristics);
+    }
+
+    //shadowed are the trees in shadow next round, the heuristics are by cell
+    int choose(State state, int player, int[] moves, int count, long shadowed, int[] completeH, int[] growH, int[] seedH) {
+        int day = state.day;
+        int daysLeft = params.get(Params.HORIZON_DAY) - day;
+        //sun of a tree until the horizon, the forecast knows its shadows on every day
+        boolean forecast = params.get(Params.SUN_FORECAST) != 0;
+        if (forecast) sunForecast.update(state, params.get(Params.HORIZON_DAY));
+        int lastGrow3Day = params.get(Params.LAST_GROW3_DAY);
+        long own = state.owners[player];
+
+        int count3TreesAll = state.countTrees(player, 3);
+        int growCost3Tree = 7 + count3TreesAll;
+        int growCost2Tree = 3 + state.countTrees(player, 2);
+        int growCost1Tree = 1 + state.countTrees(player, 1);
+        boolean noSeeds = state.countTrees(player, 0) == 0;
+
+        int bestComplete = -1, bestCompleteH = Integer.MIN_VALUE;
+        int bestGrow = -1, bestGrowH = Integer.MIN_VALUE;
+        int bestSeed = -1, bestSeedH = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int from = Action.from(move);
+            int richness = state.richness[from];
+            switch (Action.type(move)) {
+                case Action.COMPLETE: {
+                    //from day 18 every 3Trees should be completed
+                    //from day 13 worth to complete 3Trees if they are shadowed next turn
+                    if (day < params.get(Params.COMPLETE_FROM_DAY)) break;
+                    //if nutrient=0 or 1 and cell richness is 1 than not effective to complete
+                    //cost 4 SP and got 1 or 0 GP, although 3SP=1GP at the end
+                    int gPEarned = richness > 1 ? 1 << (richness - 1) : 0;
+                    int income = forecast ? sunForecast.get(from, 3) : daysLeft * 3;
+                    if (state.nutrient + gPEarned <= (income - 4) / 3) break;
+                    if (day >= params.get(Params.COMPLETE_ALL_FROM_DAY) ? state.sun[player] < 4 : (shadowed & (1L << from)) == 0) break;
+                    if (completeH[from] > bestCompleteH) {
+                        bestCompleteH = completeH[from];
+                        bestComplete = move;
                     }
+                    break;
                 }
-            }
-        //from day 13 worth to complete 3Trees if they are shadowed next turn
-        else if (day >= 13)
-            for (Cell cell : board) {
-                for (Action action : completeActions) {
-                    //if nutritient=0 or 1 and cell richness is 1 than not effective to complete
-                    // cost 4 SP and got 1 or 0 GP, although 3SP=1GP at the end
-                    int gPEarned = 0;
-                    if (cell.getRichness() > 1)
-                        gPEarned = (int) Math.pow(2, cell.getRichness() - 1);
-                    if (action.getCellIndexFrom() == cell.getIndex() && ((nutrient + gPEarned) > (((23 - day) * 3) - 4) / 3) &&
-                            cell.isShadowedNextRound()) {
-                        System.err.println("===== Completed 3tree ==== " + cell.getIndex());
-                        return action;
+                case Action.GROW: {
+                    if (growH[from] <= bestGrowH) break;
+                    //when it is worth to grow a certain tree
+                    int size = state.getSize(from);
+                    int income = forecast ? sunForecast.get(from, size + 1) : daysLeft * (size + 1);
+                    boolean go;
+                    if (size == 2)
+                        go = income > growCost3Tree && (day < lastGrow3Day || (day == lastGrow3Day && richness > 1));
+                    else if (size == 1)
+                        go = income > growCost2Tree && (count3TreesAll > 0 && growCost2Tree <= growCost3Tree /
+                                params.get(Params.GROW2_COST_DIVISOR) * params.get(Params.GROW2_COST_MULTIPLIER) || count3TreesAll == 0);
+                    else
+                        go = income > growCost1Tree && growCost1Tree <= growCost2Tree / params.get(Params.GROW1_COST_DIVISOR);
+                    if (go) {
+                        bestGrowH = growH[from];
+                        bestGrow = move;
+                    }
+                    break;
+                }
+                case Action.SEED: {
+                    //only seed 1 seed at a time, no need more
+                    int to = Action.to(move);
+                    if (!noSeeds || (own & Hex.neighbourMask[to]) != 0) break;
+                    if (seedH[to] > bestSeedH) {
+                        bestSeedH = seedH[to];
+                        bestSeed = move;
                     }
+                    break;
                 }
             }
+        }
+        if (bestComplete != -1) return bestComplete;
+        if (bestGrow != -1) return bestGrow;
+        if (bestSeed != -1) return bestSeed;
+        //if no other option then just wait
+        return Action.WAIT;
+    }
+}
+
+/*
+fixed size hash table of search results in primitive arrays, sized from a memory limit
+buckets of 4 slots, a new entry takes an empty slot or the one with the same key,
+otherwise the entry of the oldest search, then the shallowest one
+ */
+class TranspositionTable {
+    static final int EXACT = 0, LOWER = 1, UPPER = 2, BOUND = 3;
+    //added to the bound when the value holds at any depth, every line below it ended with the game
+    static final int PROVEN = 4;
+    private static final int BUCKET = 4;
+    //key, value, move, depth, flag and age
+    private static final int ENTRY_BYTES = 8 + 4 + 4 + 2 + 1 + 1;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int[] moves;
+    private final short[] depths;
+    private final byte[] flags;
+    private final byte[] ages;
+    private final int mask;
+    private byte age;
+    long hits, misses;
+
+    public TranspositionTable(int megabytes) {
+        int size = Integer.highestOneBit((int) Math.max(BUCKET, Math.min(1L << 30, (long) megabytes << 20) / ENTRY_BYTES));
+        keys = new long[size];
+        values = new int[size];
+        moves = new int[size];
+        depths = new short[size];
+        flags = new byte[size];
+        ages = new byte[size];
+        mask = size - 1;
+    }
+
+    //entries of earlier searches become the first to be replaced
+    public void newSearch() {
+        age++;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hits = misses = 0;
+    }
+
+    //slot of the key or -1
+    public int probe(long key) {
+        if (key == 0) key = 1;
+        int bucket = (int) key & mask & -BUCKET;
+        for (int slot = bucket; slot < bucket + BUCKET; slot++) {
+            if (keys[slot] == key) {
+                hits++;
+                ages[slot] = age;
+                return slot;
+            }
+        }
+        misses++;
+        return -1;
+    }
+
+    public void store(long key, int value, int move, int depth, int flag) {
+        if (key == 0) key = 1;
+        int bucket = (int) key & mask & -BUCKET;
+        int victim = bucket;
+        for (int slot = bucket; slot < bucket + BUCKET; slot++) {
+            if (keys[slot] == key || keys[slot] == 0) {
+                victim = slot;
+                break;
+            }
+            boolean older = (byte) (age - ages[slot]) > (byte) (age - ages[victim]);
+            if (older || ages[slot] == ages[victim] && depths[slot] < depths[victim]) victim = slot;
+        }
+        keys[victim] = key;
+        values[victim] = value;
+        moves[victim] = move;
+        depths[victim] = (short) depth;
+        flags[victim] = (byte) flag;
+        ages[victim] = age;
+    }
 
-        //=========== GROW ===========
-        List<Action> growActions = possibleActions.stream().filter(action -> action.getName().equals("GROW")).collect(Collectors.toList());
+    public int getValue(int slot) {
+        return values[slot];
+    }
 
-        Collections.sort(board, compareByGrowHeuristics);
-        for (Cell c : board) {
-            if (this.getTree(c.getIndex()) != null && this.getTree(c.getIndex()).isMine())
-                System.err.println("Cell ID: " + c.getIndex() + " GROW H: " + c.getGrowHeuristics());
+    public int getMove(int slot) {
+        return moves[slot];
+    }
+
+    public int getDepth(int slot) {
+        return depths[slot];
+    }
+
+    public int getFlag(int slot) {
+        return flags[slot];
+    }
+
+    public double hitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+}
+
+/*
+Monte Carlo tree search over simultaneous turns, my move and the opponent's move
+are separate levels of the tree and the turn is played when both are known
+nodes live in preallocated arrays, playouts use the heuristic policy with some noise to the end of the game
+after a played turn the position is looked up in the transposition table, so
+the same position reached by another move order shares the node and its statistics
+the tree is kept between turns and re-rooted at the observed position, so the visits
+spent on the expected replies are not lost
+ */
+class MctsEngine implements Engine {
+    private static final int MAX_NODES = 1 << 18;
+    private static final int MAX_DEPTH = 512;
+    private static final double EXPLORATION = 0.7;
+    private static final double PRIOR_WEIGHT = 5.0;
+    private static final double RANDOM_MOVE_CHANCE = 0.1;
+
+    private int[] nodeMove = new int[MAX_NODES];
+    private int[] firstChild = new int[MAX_NODES];
+    private int[] childCount = new int[MAX_NODES];
+    private int[] visits = new int[MAX_NODES];
+    //sum of results seen by the player who made the node's move
+    private double[] wins = new double[MAX_NODES];
+    private boolean[] preferred = new boolean[MAX_NODES];
+    //node holding the statistics, another node for a transposition, -1 until the position is known
+    private int[] link = new int[MAX_NODES];
+    private long[] nodeKey = new long[MAX_NODES];
+    private int nodeCount;
+    private final TranspositionTable table;
+
+    //the kept subtree is copied here when the tree is re-rooted, then the arrays are swapped
+    private final boolean reuse;
+    private boolean hasTree;
+    private int reusedVisits;
+    private int[] nextNodeMove, nextFirstChild, nextChildCount, nextVisits, nextLink;
+    private double[] nextWins;
+    private boolean[] nextPreferred;
+    private long[] nextNodeKey;
+    //old node of every new node, new node of every old node or -1
+    private int[] origin, mapping, pending;
+    //a new node only pointing to a node kept elsewhere in the new tree
+    private boolean[] pointer;
+
+    private final State root = new State();
+    private final State scratch = new State();
+    private final Simulator simulator = new Simulator(1);
+    private final HeuristicPolicy policy;
+    private final int[] moves = new int[MoveGen.MAX_MOVES];
+    private final int[] path = new int[MAX_DEPTH];
+    private final Random random;
+
+    public MctsEngine(long seed, int tableMegabytes, Params params, boolean reuse) {
+        random = new Random(seed);
+        policy = new HeuristicPolicy(params);
+        table = new TranspositionTable(tableMegabytes);
+        this.reuse = reuse;
+        if (reuse) {
+            nextNodeMove = new int[MAX_NODES];
+            nextFirstChild = new int[MAX_NODES];
+            nextChildCount = new int[MAX_NODES];
+            nextVisits = new int[MAX_NODES];
+            nextWins = new double[MAX_NODES];
+            nextPreferred = new boolean[MAX_NODES];
+            nextLink = new int[MAX_NODES];
+            nextNodeKey = new long[MAX_NODES];
+            origin = new int[MAX_NODES];
+            mapping = new int[MAX_NODES];
+            pending = new int[MAX_NODES];
+            pointer = new boolean[MAX_NODES];
         }
+    }
 
-        System.err.println("==== Sorted 2 trees =====");
-        board.stream().filter(
-                (Cell cell) -> this.getTree(cell.getIndex()) != null &&
-                        this.getTree(cell.getIndex()).isMine() &&
-                        this.getTree(cell.getIndex()).getSize() == 2)
-                .forEach(System.err::println);
+    @Override
+    public int getNextAction(Game game, Deadline deadline) {
+        long hits = table.hits, misses = table.misses;
+        int playouts = search(game.getState(), deadline);
 
-        System.err.println("==== Sorted 1 trees =====");
-        board.stream().filter(
-                (Cell cell) -> this.getTree(cell.getIndex()) != null &&
-                        this.getTree(cell.getIndex()).isMine() &&
-                        this.getTree(cell.getIndex()).getSize() == 1)
-                .forEach(System.err::println);
+        int best = -1;
+        for (int child = firstChild[0]; child < firstChild[0] + childCount[0]; child++) {
+            if (best == -1 || visits[child] > visits[best]) best = child;
+        }
+        if (Log.isInfo()) Log.info("MCTS playouts: " + playouts + " nodes: " + nodeCount +
+                " transpositions: " + (table.hits - hits) + "/" + (table.hits - hits + table.misses - misses) +
+                " reused visits: " + reusedVisits + "/" + visits[0]);
+        return best == -1 ? -1 : nodeMove[best];
+    }
+
+    //a tree for my move in the position until the deadline, returns the number of playouts
+    //with reuse the subtree of the position is kept from the last search when it is there
+    int search(State position, Deadline deadline) {
+        root.copyFrom(position);
+        root.setWaiting(State.ME, false);
+        table.newSearch();
+        reusedVisits = reuse && hasTree ? reroot(root.hash) : 0;
+        if (reusedVisits == 0) {
+            nodeCount = 1;
+            childCount[0] = 0;
+            visits[0] = 0;
+            wins[0] = 0;
+            link[0] = 0;
+            nodeKey[0] = root.hash;
+        }
+        hasTree = true;
 
-        System.err.println("==== Sorted 0 trees =====");
-        board.stream().filter(
-                (Cell cell) -> this.getTree(cell.getIndex()) != null &&
-                        this.getTree(cell.getIndex()).isMine() &&
-                        this.getTree(cell.getIndex()).getSize() == 0)
-                .forEach(System.err::println);
+        int playouts = 0;
+        do {
+            playout();
+            playouts++;
+        } while (!deadline.isOver() && nodeCount < MAX_NODES - MoveGen.MAX_MOVES);
+        return playouts;
+    }
 
-        for (Cell cell : board) {
-            for (Action action : growActions) {
-                if (action.getCellIndexFrom() == cell.getIndex()) {
-                    int treeSize = this.getTree(action.getCellIndexFrom()).getSize();
-                    boolean go1 = false, go2 = false, go3 = false;
-
-                    if (treeSize == 2)
-                        //when it is worth to grow a certain tree
-                        if ((((23 - day) * 3 - 3 > growCost3Tree) && cell.isShadowedNextRound()) ||
-                                ((23 - day) * 3 > growCost3Tree))
-                            go3 = true;
-
-                    if (treeSize == 1)
-                        if ((((23 - day) * 2 - 2 > growCost2Tree) && cell.isShadowedNextRound()) ||
-                                ((23 - day) * 2 > growCost2Tree))
-                            go2 = true;
-
-                    if (treeSize == 0)
-                        if ((((23 - day) * 1 - 1 > growCost1Tree) && cell.isShadowedNextRound()) ||
-                                ((23 - day) * 1 > growCost1Tree))
-                            go1 = true;
-
-                    if (treeSize == 2 && (day < 22 || (day == 22 && cell.getRichness() > 1)) && go3) {
-                        System.err.println("===== New 3tree ==== " + cell.getIndex());
-                        return action;
-                    } else if (treeSize == 1 && go2 && (count3TreesAll > 0 && growCost2Tree <= growCost3Tree / 3 * 2 || count3TreesAll == 0)) {
-                        System.err.println("===== New 2tree ==== " + cell.getIndex());
-                        return action;
-                    } else if (treeSize == 0 && go1 && growCost1Tree <= growCost2Tree / 2) {
-                        System.err.println("===== New 1tree ==== " + cell.getIndex());
-                        return action;
-                    }
+    /*
+    the node of the observed position is found in the table by its key, the key covers the trees,
+    sun points, score, day, nutrients and the waiting flags, so a match is the same position
+    the nodes reachable from it are copied to the front of the spare arrays, child blocks stay
+    contiguous, the rest of the pool is free again; a transposition target outside the subtree is
+    kept as a node of its own, a block child already kept that way becomes a pointer to it
+    returns the visits of the new root, 0 when the position is not in the tree
+     */
+    private int reroot(long key) {
+        int slot = table.probe(key);
+        if (slot == -1) return 0;
+        int holder = table.getValue(slot);
+        if (holder >= nodeCount || nodeKey[holder] != key || link[holder] != holder || visits[holder] == 0) return 0;
+
+        Arrays.fill(mapping, 0, nodeCount, -1);
+        int count = 0, head = 0, pendingCount = 0;
+        mapping[holder] = count;
+        pointer[count] = false;
+        origin[count++] = holder;
+        while (head < count || pendingCount > 0) {
+            if (head == count) {
+                int target = pending[--pendingCount];
+                if (mapping[target] == -1) {
+                    mapping[target] = count;
+                    pointer[count] = false;
+                    origin[count++] = target;
                 }
+                continue;
+            }
+            int node = head++;
+            nextFirstChild[node] = 0;
+            if (pointer[node]) continue;
+            int first = firstChild[origin[node]], children = childCount[origin[node]];
+            if (children == 0) continue;
+            //the pointers can double the size of the subtree, a full pool is searched fresh
+            if (count + children > MAX_NODES - MoveGen.MAX_MOVES) return 0;
+            nextFirstChild[node] = count;
+            for (int child = first; child < first + children; child++) {
+                pointer[count] = mapping[child] != -1;
+                if (!pointer[count]) mapping[child] = count;
+                origin[count++] = child;
+                if (link[child] != -1 && link[child] != child) pending[pendingCount++] = link[child];
             }
         }
 
-        //=========== SEED ===========
-        Collections.sort(board, compareBySeedHeuristics);
-        List<Action> seedActions = possibleActions.stream().filter(action -> action.getName().equals("SEED")).collect(Collectors.toList());
-        for (Cell cell : board) {
-            for (Action action : seedActions) {
-                if (action.getCellIndexTo() == cell.getIndex() && !cell.isHasNeighborTree()) {
-                    System.err.println("SeedHeuristics: id:" + cell.getIndex() + " hnt: " + cell.isHasNeighborTree() + " h:" + cell.getSeedHeuristics());
-                }
+        for (int node = 0; node < count; node++) {
+            int old = origin[node];
+            nextNodeMove[node] = nodeMove[old];
+            nextPreferred[node] = preferred[old];
+            if (pointer[node]) {
+                nextChildCount[node] = 0;
+                nextVisits[node] = 0;
+                nextWins[node] = 0;
+                nextLink[node] = mapping[old];
+                nextNodeKey[node] = 0;
+            } else {
+                nextChildCount[node] = childCount[old];
+                nextVisits[node] = visits[old];
+                nextWins[node] = wins[old];
+                nextLink[node] = link[old] == -1 ? -1 : mapping[link[old]];
+                nextNodeKey[node] = nodeKey[old];
             }
         }
+        swapArrays();
+        nodeCount = count;
 
-        //only seed 1 seed at a time, no need more
-        if (countSeeds == 0) {
-            for (Cell cell : board) {
-                for (Action action : seedActions) {
-                    if (action.getCellIndexTo() == cell.getIndex() && !cell.isHasNeighborTree()) {
-                        return action;
-                    }
+        //the old entries point to old nodes, they fail the key check, the kept ones are stored again
+        for (int node = 1; node < nodeCount; node++) {
+            if (link[node] == node && nodeKey[node] != 0) table.store(nodeKey[node], node, 0, 0, TranspositionTable.EXACT);
+        }
+        return visits[0];
+    }
+
+    private void swapArrays() {
+        int[] ints = nodeMove; nodeMove = nextNodeMove; nextNodeMove = ints;
+        ints = firstChild; firstChild = nextFirstChild; nextFirstChild = ints;
+        ints = childCount; childCount = nextChildCount; nextChildCount = ints;
+        ints = visits; visits = nextVisits; nextVisits = ints;
+        ints = link; link = nextLink; nextLink = ints;
+        double[] doubles = wins; wins = nextWins; nextWins = doubles;
+        boolean[] booleans = preferred; preferred = nextPreferred; nextPreferred = booleans;
+        long[] longs = nodeKey; nodeKey = nextNodeKey; nextNodeKey = longs;
+    }
+
+    //my moves at the root of the last search with their statistics
+    int getRootChildCount() {
+        return childCount[0];
+    }
+
+    int getRootMove(int i) {
+        return nodeMove[firstChild[0] + i];
+    }
+
+    int getRootVisits(int i) {
+        return visits[firstChild[0] + i];
+    }
+
+    private void playout() {
+        scratch.copyFrom(root);
+        int node = 0, depth = 0, myMove = Action.WAIT;
+        path[0] = 0;
+        while (!Simulator.isGameOver(scratch) && depth < MAX_DEPTH - 1) {
+            int mover = depth & 1;
+            if (childCount[node] == 0) {
+                if (node != 0 && visits[node] == 0) break;
+                if (nodeCount + MoveGen.MAX_MOVES > MAX_NODES) break;
+                expand(node, mover);
+            }
+            int child = select(node);
+            if (mover == State.ME) myMove = nodeMove[child];
+            else {
+                simulator.play(scratch, myMove, nodeMove[child]);
+                child = transposition(child);
+            }
+            node = child;
+            path[++depth] = node;
+            if (visits[node] == 0) break;
+        }
+        //my move is chosen but the turn is not played yet
+        if ((depth & 1) == 1) simulator.play(scratch, myMove, pick(State.OPP));
+        double result = rollout();
+        for (int i = 0; i <= depth; i++) {
+            int n = path[i];
+            visits[n]++;
+            //odd depth nodes are my moves
+            wins[n] += (i & 1) == 1 ? result : 1 - result;
+        }
+    }
+
+    //the node that stands for the position after the played turn
+    private int transposition(int child) {
+        if (link[child] != -1) return link[child];
+        long key = scratch.hash;
+        int slot = table.probe(key);
+        if (slot != -1) {
+            int node = table.getValue(slot);
+            if (node < nodeCount && nodeKey[node] == key && link[node] == node) {
+                link[child] = node;
+                return node;
+            }
+        }
+        table.store(key, child, 0, 0, TranspositionTable.EXACT);
+        nodeKey[child] = key;
+        link[child] = child;
+        return child;
+    }
+
+    private void expand(int node, int mover) {
+        int count = MoveGen.generate(scratch, mover, moves);
+        int preferredMove = policy.choose(scratch, mover, moves, count);
+        firstChild[node] = nodeCount;
+        childCount[node] = count;
+        for (int i = 0; i < count; i++) {
+            int child = nodeCount++;
+            nodeMove[child] = moves[i];
+            childCount[child] = 0;
+            visits[child] = 0;
+            wins[child] = 0;
+            preferred[child] = moves[i] == preferredMove;
+            //after my move the turn is not played yet, after the opponent's it is
+            link[child] = mover == State.ME ? child : -1;
+            nodeKey[child] = 0;
+        }
+    }
+
+    //UCB with a bias toward the heuristic move that fades with visits
+    private int select(int node) {
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        double logVisits = Math.log(visits[node] + 1);
+        for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+            double prior = preferred[child] ? PRIOR_WEIGHT : 0;
+            int stats = link[child] == -1 ? child : link[child];
+            double value;
+            if (visits[stats] == 0) value = 1e6 + prior + random.nextDouble();
+            else value = wins[stats] / visits[stats] +
+                    EXPLORATION * Math.sqrt(logVisits / visits[stats]) + prior / (visits[stats] + 1);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    //plays the heuristic policy for both players to the end of the game, returns 1, 0.5 or 0 for my result
+    private double rollout() {
+        while (!Simulator.isGameOver(scratch)) {
+            int myMove = pick(State.ME);
+            simulator.play(scratch, myMove, pick(State.OPP));
+        }
+        return Math.signum(Simulator.finalValue(scratch)) * 0.5 + 0.5;
+    }
+
+    private int pick(int player) {
+        if (scratch.waiting[player]) return Action.WAIT;
+        int count = MoveGen.generate(scratch, player, moves);
+        if (random.nextDouble() < RANDOM_MOVE_CHANCE) return moves[random.nextInt(count)];
+        return policy.choose(scratch, player, moves, count);
+    }
+}
+
+/*
+depth first solver for the last days, it takes over from the wrapped engine from
+START_DAY, or a few days earlier when the remaining game is small enough
+alpha-beta where the opponent answers my move (a pessimistic view of the
+simultaneous turn), iterative deepening by turns, positions memoized in a
+transposition table, moves ordered by the heuristic policy and the table
+when the deadline hits before the first iteration the heuristic answer is used
+ */
+class EndgameEngine implements Engine {
+    private static final int START_DAY = 20;
+    //before START_DAY the solver only takes over a small game, never before this day
+    private static final int EARLY_START_DAY = 16;
+    private static final double NODE_ESTIMATE_LIMIT = 2e6;
+    private static final int MAX_TURNS = 128;
+    private static final int DEADLINE_POLL_MASK = 63;
+    //values are points * 100, the tree count breaks ties
+    private static final int WIN = 1_000_000;
+
+    private final Engine engine;
+    private final TranspositionTable table;
+    private final Simulator simulator = new Simulator(MAX_TURNS + 1);
+    private final HeuristicPolicy policy;
+    private final State state = new State();
+    private final int[][] moveBuffers = new int[2 * MAX_TURNS + 2][MoveGen.MAX_MOVES];
+    private Deadline deadline;
+    private long nodes;
+    private boolean aborted;
+    private boolean horizonReached;
+
+    public EndgameEngine(Engine engine, int tableMegabytes, Params params) {
+        this.engine = engine;
+        policy = new HeuristicPolicy(params);
+        table = new TranspositionTable(tableMegabytes);
+    }
+
+    @Override
+    public int getNextAction(Game game, Deadline deadline) {
+        state.copyFrom(game.getState());
+        state.setWaiting(State.ME, false);
+        boolean takeOver = state.day >= START_DAY || state.day >= EARLY_START_DAY && estimateNodes() <= NODE_ESTIMATE_LIMIT;
+        if (!takeOver) return engine.getNextAction(game, deadline);
+        //nothing to decide, WAIT is the only legal move
+        int[] rootMoves = moveBuffers[0];
+        if (MoveGen.generate(state, State.ME, rootMoves) == 1) return rootMoves[0];
+
+        this.deadline = deadline;
+        nodes = 0;
+        aborted = false;
+        table.newSearch();
+        simulator.clearUndo();
+        int bestMove = -1, bestValue = 0, depth;
+        for (depth = 1; depth <= MAX_TURNS; depth++) {
+            horizonReached = false;
+            int value = search(depth, -WIN - 1, WIN + 1, 0);
+            if (aborted) break;
+            int slot = table.probe(state.hash);
+            if (slot != -1) bestMove = table.getMove(slot);
+            bestValue = value;
+            //every line ended with the game, the value is exact
+            if (!horizonReached) break;
+        }
+        if (Log.isInfo()) Log.info("Endgame depth: " + (aborted ? depth - 1 : depth) + " nodes: " + nodes +
+                " value: " + bestValue + (horizonReached ? "" : " solved") + " tt hit: " + (int) (table.hitRate() * 100) + "%");
+        return bestMove;
+    }
+
+    /*
+    rough size of the full tree: both players' branching for every action left in the game
+    the branching of a later turn is taken as WAIT plus a GROW or COMPLETE for every tree, what
+    the player can do once the sun comes in; the moves of the current turn are no guide, a turn
+    where nobody can afford anything would make the whole game look small
+     */
+    private double estimateNodes() {
+        double myMoves = 1 + Long.bitCount(state.owners[State.ME]);
+        double oppMoves = 1 + Long.bitCount(state.owners[State.OPP]);
+        int actionsLeft = (Simulator.LAST_DAY - state.day + 1) * 2;
+        return Math.pow(myMoves * oppMoves, actionsLeft);
+    }
+
+    //my turn: the best of my moves, each answered by the opponent
+    private int search(int depth, int alpha, int beta, int turn) {
+        //every played turn is a node, leaves included, so the clock is read every few turns
+        if ((++nodes & DEADLINE_POLL_MASK) == 0 && deadline.isOver()) aborted = true;
+        if (aborted) return 0;
+        if (Simulator.isGameOver(state)) return Simulator.finalValue(state);
+        if (depth == 0 || turn == MAX_TURNS) {
+            horizonReached = true;
+            return Simulator.estimate(state);
+        }
+
+        int tableMove = -1;
+        int slot = table.probe(state.hash);
+        if (slot != -1) {
+            tableMove = table.getMove(slot);
+            int flag = table.getFlag(slot);
+            boolean proven = (flag & TranspositionTable.PROVEN) != 0;
+            if (proven || table.getDepth(slot) >= depth) {
+                int value = table.getValue(slot);
+                int bound = flag & TranspositionTable.BOUND;
+                if (bound == TranspositionTable.EXACT || bound == TranspositionTable.LOWER && value >= beta ||
+                        bound == TranspositionTable.UPPER && value <= alpha) {
+                    //a value found with a horizon keeps the deepening going
+                    if (!proven) horizonReached = true;
+                    return value;
                 }
             }
         }
 
-        //=========== WAIT ===========
-        //if no other option then just wait
-        return possibleActions.get(0);
+        //the horizon flag of this subtree alone decides if its value is proven
+        boolean outerHorizon = horizonReached;
+        horizonReached = false;
+        int[] moves = moveBuffers[2 * turn];
+        int count = orderMoves(State.ME, moves, tableMove);
+        int originalAlpha = alpha;
+        int best = -WIN - 1, bestMove = Action.WAIT;
+        for (int i = 0; i < count && alpha < beta; i++) {
+            int value = answer(moves[i], depth, alpha, beta, turn);
+            if (aborted) return 0;
+            if (value > best) {
+                best = value;
+                bestMove = moves[i];
+            }
+            alpha = Math.max(alpha, value);
+        }
+        int flag = best <= originalAlpha ? TranspositionTable.UPPER : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        if (!horizonReached) flag |= TranspositionTable.PROVEN;
+        horizonReached |= outerHorizon;
+        table.store(state.hash, best, bestMove, depth, flag);
+        return best;
+    }
+
+    //the opponent's best answer to my move, then the turn is played
+    private int answer(int myMove, int depth, int alpha, int beta, int turn) {
+        int[] moves = moveBuffers[2 * turn + 1];
+        int count = orderMoves(State.OPP, moves, -1);
+        int best = WIN + 1;
+        for (int i = 0; i < count && alpha < beta; i++) {
+            simulator.playTurn(state, myMove, moves[i]);
+            int value = search(depth - 1, alpha, beta, turn + 1);
+            simulator.undo(state);
+            if (aborted) return 0;
+            best = Math.min(best, value);
+            beta = Math.min(beta, value);
+        }
+        return best;
+    }
+
+    /*
+    legal moves, the table move and the heuristic choice first, then COMPLETE, GROW and WAIT
+    seeds are left out when there are not enough days left to grow and complete them
+     */
+    private int orderMoves(int player, int[] moves, int tableMove) {
+        int count = MoveGen.generate(state, player, moves);
+        int preferred = policy.choose(state, player, moves, count);
+        boolean seeding = Simulator.LAST_DAY - state.day >= 4;
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (seeding || Action.type(moves[i]) != Action.SEED) moves[kept++] = moves[i];
+        }
+        //insertion sort on a small list, higher priority first
+        for (int i = 1; i < kept; i++) {
+            int move = moves[i], priority = priority(move, preferred, tableMove);
+            int j = i - 1;
+            while (j >= 0 && priority(moves[j], preferred, tableMove) < priority) {
+                moves[j + 1] = moves[j];
+                j--;
+            }
+            moves[j + 1] = move;
+        }
+        return kept;
+    }
+
+    private int priority(int move, int preferred, int tableMove) {
+        if (move == tableMove) return 10;
+        if (move == preferred) return 9;
+        switch (Action.type(move)) {
+            case Action.COMPLETE:
+                return 4 + state.richness[Action.from(move)];
+            case Action.GROW:
+                return 2 + state.getSize(Action.from(move));
+            case Action.WAIT:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+}
+
+/*
+opening moves found offline by BookGenerator, keyed by the board layout and the position
+the key is the high half of Zobrist.board of the richness xor the position's hash as my player sees it
+it is in the source as base64, 6 bytes for every entry sorted by key: the key and the move (type, from, to)
+ */
+class OpeningBook {
+    //day 0 of every board without holes, a board with holes never hits
+    static final int DAYS = 1;
+    static final String DATA = "gW1XkAAAgwpc5AAAhEMBFgAAh1tHawAAiJvoaAAAiN4YhgAAic5rBgAAitnSfgAAjmanhQAAjmckIQAAkm6YBwAAkuuc9QAAk57+kAAAmBWh9QAAmJvqQwAAmK4SoAAAm4xTOwAAnCUcHAAAnnaFZQAAn1z8BwAAoAo3SwAAoLtvAwAAoP6f7QAAoWL6IAAApmP4xgAAqgCi7QAArKNyYQAAsLoAOwAAsMtlJQAAsPXSggAAtlYCDgAAugvvggAAujVYJQAAuo7rcAAAuvCUiAAAvce2ggAAwbhd0QAAxMM1+gAAxkSJGAAAyMqL9wAAyoix4QAAy1EkwgAAy3jXdgAAy90yjwAAzgO/XQAA0WSgsQAA0Y2nGQAA1i39QwAA18D6bQAA2MqJ3AAA2xwiiAAA3jZFlQAA4OoMnAAA4u3GZAAA43GjqQAA45ikAQAA4/215AAA5NH58wAA5gdjugAA6BP7ZAAA6Q0QCwAA62obfwAA7CNGjQAA8K/+WQAA80RZYQAA9Vuw6AAA9hbC/gAA+YTTxgAA+a0gcgAA+cgxlwAA+lHDWQAA+t+I7wAA/ZbVHQAA/nVCiQAA/oFsZQAA/6WN6AAAADU1iQAAA8nWogAABWYtshYKBc/j1wAABowJLgAABtharwAACEKJxwAACTfrogAADHI0LhbNDLEebQAADwvUNQAADz9GOAAAECSUzQAAEFYOBwAAEHDHTAAAEc1vKgAAEkOfuQAAEncNtAAAE2d+NAAAE66YlwAAFQrCSwAAFRzhsgAAGZlDNAAAGgCx+gAAGo76TAAAHUnsCAAAHWBsxAAAH592QQAAH+g5AQAAIKL6sAAAIVKcJwAAJx/BUwAAKBWy4gAAKmJwFwAALWNy8QAALw7BTAAAMTXSEgAAMuDCjQAANyo7mwAAOBWwyQAAOCBIKgAAOPIwkgAAOleK3wAAOwIJsQAAO8vvEgAAPeqxPAAAQFGu9QAARQM1agAARok5MAAASR98BwAASpEkUhkHTRiNvAAAUCGk0wAAUFhQ6QAAUGRUPQAAUKSgIQAAV+390wAAWWWwBwAAWcubYAAAWmQqhgAAWt+Z0wAAXS13dAAAYQP/uAAAYhRGwAAAYnFXJQAAYrGjOQAAZBJztRcdZQyY2gAAZTgK1wAAaHEpngAAagbrawAAba4n6AAAba+kTAAAbrgdNAAAbuxOtQAAcrruVgAAd/8x2gAAfXrAjwAAfw2OpAAA";
+
+    private final int[] keys;
+    private final int[] moves;
+
+    public OpeningBook(int[] keys, int[] moves) {
+        this.keys = keys;
+        this.moves = moves;
+    }
+
+    static int key(State state) {
+        return (int) ((Zobrist.board(state) ^ state.hash) >>> 32);
+    }
+
+    static int encode(int move) {
+        return Action.type(move) << 12 | Action.from(move) << 6 | Action.to(move);
+    }
+
+    static OpeningBook decode(String data) {
+        byte[] bytes = Base64.getDecoder().decode(data);
+        int[] keys = new int[bytes.length / 6];
+        int[] moves = new int[keys.length];
+        for (int i = 0, b = 0; i < keys.length; i++, b += 6) {
+            keys[i] = (bytes[b] & 0xFF) << 24 | (bytes[b + 1] & 0xFF) << 16 | (bytes[b + 2] & 0xFF) << 8 | bytes[b + 3] & 0xFF;
+            int move = (bytes[b + 4] & 0xFF) << 8 | bytes[b + 5] & 0xFF;
+            moves[i] = Action.pack(move >>> 12, move >>> 6 & 63, move & 63);
+        }
+        return new OpeningBook(keys, moves);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    //the book move of the position, -1 if it is not in the book; a false hit is still checked to be legal
+    public int lookup(State state) {
+        if (state.day >= DAYS) return -1;
+        int i = Arrays.binarySearch(keys, key(state));
+        return i < 0 ? -1 : moves[i];
+    }
+}
+
+//plays the book move while there is one, the wrapped engine decides otherwise
+class BookEngine implements Engine {
+    private final Engine engine;
+    private final OpeningBook book;
+
+    public BookEngine(Engine engine, OpeningBook book) {
+        this.engine = engine;
+        this.book = book;
+    }
+
+    @Override
+    public int getNextAction(Game game, Deadline deadline) {
+        int move = book.lookup(game.getState());
+        if (move != -1 && game.isPossibleAction(move)) {
+            Log.info("Book move");
+            return move;
+        }
+        return engine.getNextAction(game, deadline);
+    }
+}
+
+//record=<file> writes the input of every turn, the TurnRecorder of the offline tools does it
+interface Recorder {
+    void writeBoard(List<Cell> cells);
+
+    void writeTurn(State state, int[] actions, int count);
+
+    void flush();
+}
+
+/*
+diagnostics for System.err, collected in one reused buffer and written
+only after the action is sent, so logging never delays the answer
+the level is set at startup, below it the calls only compare two ints;
+check isDebug() before building a message that is not a label and a number
+ */
+class Log {
+    static final int OFF = 0, INFO = 1, DEBUG = 2;
+    private static int level = INFO;
+    private static final StringBuilder buffer = new StringBuilder(1 << 16);
+
+    static void setLevel(String name) {
+        switch (name) {
+            case "off":
+                level = OFF;
+                break;
+            case "info":
+                level = INFO;
+                break;
+            case "debug":
+                level = DEBUG;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown log level: " + name);
+        }
+    }
+
+    static int getLevel() {
+        return level;
+    }
+
+    static void setLevel(int level) {
+        Log.level = level;
+    }
+
+    static boolean isInfo() {
+        return level >= INFO;
+    }
+
+    static boolean isDebug() {
+        return level >= DEBUG;
+    }
+
+    static void info(String message) {
+        if (level >= INFO) buffer.append(message).append('\n');
+    }
+
+    static void info(String label, long value) {
+        if (level >= INFO) buffer.append(label).append(value).append('\n');
+    }
+
+    static void debug(String message) {
+        if (level >= DEBUG) buffer.append(message).append('\n');
+    }
+
+    static void debug(String label, long value) {
+        if (level >= DEBUG) buffer.append(label).append(value).append('\n');
+    }
+
+    static void flush() {
+        if (buffer.length() == 0) return;
+        System.err.print(buffer);
+        System.err.flush();
+        buffer.setLength(0);
+    }
+}
+
+/*
+tokenizer on the raw bytes of the input, reads ints and action lines
+without making Strings, so nothing is allocated per token
+ */
+class InputReader {
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int length, position;
+
+    public InputReader(InputStream in) {
+        this.in = in;
+    }
+
+    private int read() {
+        if (position == length) {
+            try {
+                length = in.read(buffer, 0, buffer.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = 0;
+            if (length <= 0) {
+                length = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private int skipWhitespace() {
+        int c = read();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t') c = read();
+        if (c == -1) throw new NoSuchElementException("End of input");
+        return c;
+    }
+
+    public int nextInt() {
+        int c = skipWhitespace();
+        boolean negative = c == '-';
+        if (negative) c = read();
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + c - '0';
+            c = read();
+        }
+        return negative ? -value : value;
+    }
+
+    //rest of the current line, the next line if the current one is empty
+    public void skipLine() {
+        int c = skipWhitespace();
+        while (c != '\n' && c != -1) c = read();
+    }
+
+    //GROW cellIdx | SEED sourceIdx targetIdx | COMPLETE cellIdx | WAIT, as a packed action
+    public int nextAction() {
+        int first = skipWhitespace();
+        int c = first;
+        while (c != ' ' && c != '\n' && c != -1) c = read();
+        int action;
+        switch (first) {
+            case 'S':
+                int from = nextInt();
+                action = Action.pack(Action.SEED, from, nextInt());
+                break;
+            case 'G':
+                action = Action.pack(Action.GROW, nextInt(), 0);
+                break;
+            case 'C':
+                action = Action.pack(Action.COMPLETE, nextInt(), 0);
+                break;
+            default:
+                action = Action.WAIT;
+        }
+        //WAIT may come with a message
+        if (action == Action.WAIT && c == ' ') {
+            while (c != '\n' && c != -1) c = read();
+        }
+        return action;
+    }
+}
+
+/*
+JIT warm-up for the first turn's long budget: the turn input parser, the shadows, the heuristics,
+the move generator, getNextAction and heuristic playouts run on random positions of the real board
+in a scratch player, so they are compiled before the short turns count; the real game is not touched,
+the scratch player has no book and the log is off while it plays, its diagnostics are not the game's
+ */
+class Warmup {
+    private static final int PLAYOUT_TURNS = 16;
+
+    private final Player player;
+    private final Random random = new Random(1);
+    private final State state = new State();
+    private final Simulator simulator = new Simulator(0);
+    private final HeuristicPolicy policy = new HeuristicPolicy(new Params());
+    private final int[] moves = new int[MoveGen.MAX_MOVES];
+    private final int[] oppMoves = new int[MoveGen.MAX_MOVES];
+    private final List<Cell> board;
+
+    public Warmup(List<Cell> board) {
+        this.board = board;
+        int level = Log.getLevel();
+        Log.setLevel(Log.OFF);
+        player = new Player(new String[]{"engine=heuristic", "book=false"});
+        StringBuilder input = new StringBuilder().append(board.size()).append('\n');
+        for (Cell cell : board) {
+            input.append(cell.getIndex()).append(' ').append(cell.getRichness());
+            for (int neighbour : cell.getNeighbours()) input.append(' ').append(neighbour);
+            input.append('\n');
+        }
+        player.readBoard(reader(input.toString()));
+        Log.setLevel(level);
+        for (Cell cell : board) state.setCell(cell.getIndex(), cell.getRichness());
+    }
+
+    private static InputReader reader(String input) {
+        return new InputReader(new ByteArrayInputStream(input.getBytes()));
+    }
+
+    //runs until the deadline, returns the number of positions played
+    public int run(Deadline deadline) {
+        int iterations = 0;
+        long sink = 0;
+        int level = Log.getLevel();
+        Log.setLevel(Log.OFF);
+        while (!deadline.isOver()) {
+            randomize();
+            Game game = player.getGame();
+            game.setDay(state.day);
+            player.readTurn(reader(turnInput()));
+            game.setSunDirectionTo(state.day % 6);
+            game.setShadows();
+            game.updateHeuristics();
+            game.generatePossibleActions();
+            sink += Action.toString(game.getNextAction()).length();
+            sink += playout();
+            iterations++;
+        }
+        Log.setLevel(level);
+        if (sink == 42) Log.debug("Warmup sink: ", sink);
+        return iterations;
+    }
+
+    //random trees on the usable cells of the board, with random day, sun and score
+    private void randomize() {
+        state.clearTrees();
+        int trees = 2 + random.nextInt(24);
+        for (int i = 0; i < trees; i++) {
+            int cell = board.get(random.nextInt(board.size())).getIndex();
+            if (state.getRichness(cell) == 0 || state.hasTree(cell)) continue;
+            state.addTree(cell, random.nextInt(4), random.nextInt(2), random.nextInt(4) == 0);
+        }
+        state.setDay(random.nextInt(Simulator.LAST_DAY + 1));
+        state.setNutrient(random.nextInt(Simulator.START_NUTRIENT + 1));
+        for (int player = State.ME; player <= State.OPP; player++) {
+            state.setSun(player, random.nextInt(40));
+            state.setScore(player, random.nextInt(60));
+            state.setWaiting(player, false);
+        }
+    }
+
+    private String turnInput() {
+        StringBuilder input = new StringBuilder();
+        input.append(state.nutrient).append('\n');
+        input.append(state.sun[State.ME]).append(' ').append(state.score[State.ME]).append('\n');
+        input.append(state.sun[State.OPP]).append(' ').append(state.score[State.OPP]).append(" 0\n");
+        long trees = state.getTrees();
+        input.append(Long.bitCount(trees)).append('\n');
+        for (; trees != 0; trees &= trees - 1) {
+            int cell = Long.numberOfTrailingZeros(trees);
+            input.append(cell).append(' ').append(state.getSize(cell)).append(' ').append(state.isMine(cell) ? 1 : 0)
+                    .append(' ').append(state.isDormant(cell) ? 1 : 0).append('\n');
+        }
+        int count = MoveGen.generate(state, State.ME, moves);
+        input.append(count).append('\n');
+        for (int i = 0; i < count; i++) input.append(Action.toString(moves[i])).append('\n');
+        return input.toString();
+    }
+
+    //a few turns of the search playouts on the position
+    private int playout() {
+        for (int turn = 0; turn < PLAYOUT_TURNS && !Simulator.isGameOver(state); turn++) {
+            int myMove = policy.choose(state, State.ME, moves, MoveGen.generate(state, State.ME, moves));
+            int oppMove = policy.choose(state, State.OPP, oppMoves, MoveGen.generate(state, State.OPP, oppMoves));
+            simulator.play(state, myMove, oppMove);
+        }
+        return state.score[State.ME];
     }
 }
 
 class Player {
 
-    public static void main(String args[]) {
-        Scanner in = new Scanner(System.in);
-        Game game = new Game();
+    //first turn may take 1 s, the others 100 ms, keep some margin for the output
+    private static final long FIRST_TURN_BUDGET = 900_000_000L;
+    private static final long TURN_BUDGET = 85_000_000L;
+    private static final long MILLISECOND = 1_000_000L;
+    //part of the first turn spent on the JIT warm-up, the engine gets the rest
+    private static final long WARMUP_BUDGET = 500_000_000L;
+    private static final long FIRST_TURN_LIMIT = 1_000_000_000L;
+    private static final long TURN_LIMIT = 100_000_000L;
+
+    //startup options are given as name=value arguments
+    static String option(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) return arg.substring(name.length() + 1);
+        }
+        return defaultValue;
+    }
+
+    /*
+    the offline tools and the engines that cannot help in a contest game (threads, a weaker planner)
+    are not in this source, they are built from their own files and found by class name
+     */
+    static Object offline(String className, Class<?>[] types, Object... args) {
+        try {
+            return Class.forName(className).getConstructor(types).newInstance(args);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(className + " failed to start", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(className + " is not on the classpath, build it with javac *.java", e);
+        }
+    }
 
+    static Engine createEngine(String[] args, Params params) {
+        String name = option(args, "engine", "heuristic");
+        //memory of the transposition table in MB
+        int tableMegabytes = Integer.parseInt(option(args, "ttMb", "16"));
+        Engine engine;
+        switch (name) {
+            case "mcts":
+                //threads= more than 1 searches in parallel from the root
+                int threads = Integer.parseInt(option(args, "threads", "1"));
+                //reuse=false searches every turn from an empty tree
+                boolean reuse = Boolean.parseBoolean(option(args, "reuse", "true"));
+                if (threads > 1) engine = (Engine) offline("ParallelMctsEngine", new Class<?>[]{int.class, long.class, int.class, Params.class,
+                        boolean.class}, threads, System.nanoTime(), tableMegabytes, params, reuse);
+                else engine = new MctsEngine(System.nanoTime(), tableMegabytes, params, reuse);
+                break;
+            case "heuristic":
+                engine = new HeuristicEngine();
+                break;
+            case "planner":
+                engine = (Engine) offline("DayPlanner", new Class<?>[]{long.class, Params.class}, System.nanoTime(), params);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + name);
+        }
+        //the solver takes over the last days
+        if (Boolean.parseBoolean(option(args, "endgame", "false"))) engine = new EndgameEngine(engine, tableMegabytes, params);
+        //book=true plays the moves of the book in the source, off by default: it showed no gain in self-play
+        if (Boolean.parseBoolean(option(args, "book", "false"))) {
+            long start = System.nanoTime();
+            OpeningBook openingBook = OpeningBook.decode(OpeningBook.DATA);
+            if (Log.isInfo()) Log.info("Book positions: " + openingBook.size() + " decoded in " + (System.nanoTime() - start) / 1000 + " us");
+            engine = new BookEngine(engine, openingBook);
+        }
+        return engine;
+    }
+
+    private final Game game;
+    private final Engine engine;
+    private final boolean warmup;
+    //the budgets can be changed with firstTurnMs= and turnMs=, for offline searches
+    private final long firstTurnBudget;
+    private final long turnBudget;
+    private final int[] refereeActions = new int[MoveGen.MAX_MOVES];
+    private final TurnTimer timer = new TurnTimer();
+    private final Recorder recorder;
+    private int turn = -1;
+    private int lastAction;
+    private boolean firstTurn = true;
+
+    public Player(String[] args) {
+        Params params = Params.load(option(args, "params", ""));
+        game = new Game(params);
+        engine = createEngine(args, params);
+        warmup = Boolean.parseBoolean(option(args, "warmup", "true"));
+        firstTurnBudget = Long.parseLong(option(args, "firstTurnMs", "" + FIRST_TURN_BUDGET / MILLISECOND)) * MILLISECOND;
+        turnBudget = Long.parseLong(option(args, "turnMs", "" + TURN_BUDGET / MILLISECOND)) * MILLISECOND;
+        String record = option(args, "record", "");
+        recorder = record.isEmpty() ? null : (Recorder) offline("TurnRecorder", new Class<?>[]{String.class}, record);
+    }
+
+    public void readBoard(InputReader in) {
         int numberOfCells = in.nextInt(); // 37
         for (int i = 0; i < numberOfCells; i++) {
             int index = in.nextInt(); // 0 is the center cell, the next cells spiral outwards
@@ -659,58 +2303,113 @@ class Player {
             Cell cell = new Cell(index, richness, neighbors);
             game.addBoardCell(cell);
         }
+        Hex.init(game.getBoardCells());
+        if (recorder != null) recorder.writeBoard(game.getBoardCells());
 
         game.setSunDirectionTo(0);
-        int turn = -1;
-        // game loop
-        while (true) {
-            game.setDay(in.nextInt()); // the game lasts 24 days: 0-23
-            //System.err.println("Turn: "+turn+" day: "+game.getDay());
-            //new turn;
-            game.setNutrient(in.nextInt()); // the base score you gain from the next COMPLETE action
-            game.setMySunPoints(in.nextInt()); // your sun points
-            game.setMyScore(in.nextInt()); // your current score
-            game.setOppSunPoints(in.nextInt()); // opponent's sun points
-            game.setOppScore(in.nextInt()); // opponent's score
-            game.setOppIsWaiting(in.nextInt() != 0); // whether your opponent is asleep until the next day
-            game.clearTrees();
-            int numberOfTrees = in.nextInt(); // the current amount of trees
-            for (int i = 0; i < numberOfTrees; i++) {
-                int cellIndex = in.nextInt(); // location of this tree
-                int size = in.nextInt(); // size of this tree: 0-3
-                boolean isMine = in.nextInt() != 0; // 1 if this is your tree
-                boolean isDormant = in.nextInt() != 0; // 1 if this tree is dormant
-                Tree tree = new Tree(cellIndex, size, isMine);
-                game.addTree(tree);
-            }
-            //set shadows because of new trees
-            game.clearShadows();
-            game.setShadows();
-
-            //new turn?
-            if (turn != game.getDay()) {
-                turn = game.getDay();
-                game.setSunDirectionTo(turn % 6);
-                System.err.printf("===== %d. turn =====\n", turn);
-                System.err.println("Sun To: " + game.getSunDirectionTo());
-            }
+    }
 
-            game.clearPossibleActions();
-            int numberOfPossibleActions = in.nextInt(); // all legal actions
-            if (in.hasNextLine()) {
-                in.nextLine();
+    Game getGame() {
+        return game;
+    }
+
+    //the input of one turn after the day, returns the number of legal actions
+    int readTurn(InputReader in) {
+        game.setNutrient(in.nextInt()); // the base score you gain from the next COMPLETE action
+        game.setMySunPoints(in.nextInt()); // your sun points
+        game.setMyScore(in.nextInt()); // your current score
+        game.setOppSunPoints(in.nextInt()); // opponent's sun points
+        game.setOppScore(in.nextInt()); // opponent's score
+        game.setOppIsWaiting(in.nextInt() != 0); // whether your opponent is asleep until the next day
+        game.clearTrees();
+        int numberOfTrees = in.nextInt(); // the current amount of trees
+        for (int i = 0; i < numberOfTrees; i++) {
+            int cellIndex = in.nextInt(); // location of this tree
+            int size = in.nextInt(); // size of this tree: 0-3
+            boolean isMine = in.nextInt() != 0; // 1 if this is your tree
+            boolean isDormant = in.nextInt() != 0; // 1 if this tree is dormant
+            game.addTree(cellIndex, size, isMine, isDormant);
+        }
+        int numberOfPossibleActions = in.nextInt(); // all legal actions
+        if (recorder != null) {
+            for (int i = 0; i < numberOfPossibleActions; i++) {
+                refereeActions[i] = in.nextAction();
             }
+        } else {
             for (int i = 0; i < numberOfPossibleActions; i++) {
-                String possibleAction = in.nextLine();
-                game.addPossibleAction(Action.parse(possibleAction));
+                in.skipLine();
             }
+        }
+        return numberOfPossibleActions;
+    }
+
+    //reads the input of one turn and returns the line to print
+    public String playTurn(InputReader in) {
+        game.setDay(in.nextInt()); // the game lasts 24 days: 0-23
+        timer.start();
+        Deadline deadline = new Deadline(timer.getTurnStart() + (firstTurn ? firstTurnBudget : turnBudget));
+        int numberOfPossibleActions = readTurn(in);
+        if (recorder != null) recorder.writeTurn(game.getState(), refereeActions, numberOfPossibleActions);
+        timer.mark(TurnTimer.PARSE);
+        Log.info("Parse us: ", timer.getDuration(TurnTimer.PARSE) / 1000);
+
+        //set shadows because of new trees
+        game.setShadows();
+        timer.mark(TurnTimer.SHADOWS);
+        game.updateHeuristics();
+        timer.mark(TurnTimer.HEURISTICS);
+
+        //new turn?
+        if (turn != game.getDay()) {
+            turn = game.getDay();
+            game.setSunDirectionTo(turn % 6);
+            if (Log.isInfo()) Log.info("===== " + turn + ". turn =====");
+            Log.info("Sun To: ", game.getSunDirectionTo());
+        }
+
+        //we are asked, so we are not sleeping
+        game.getState().setWaiting(State.ME, false);
+        game.generatePossibleActions();
+
+        if (firstTurn && warmup) {
+            int iterations = new Warmup(game.getBoardCells()).run(new Deadline(timer.getTurnStart() + WARMUP_BUDGET));
+            Log.info("Warmup iterations: ", iterations);
+        }
 
-            // GROW cellIdx | SEED sourceIdx targetIdx | COMPLETE cellIdx | WAIT <message>
-            Action action = game.getNextAction();
-            if (action.getName().equals("WAIT"))
-                System.out.println(action + " " + "DSP: " + game.getDailySpGeneration() + " SP: " + game.getMySunPoints());
-            else
-                System.out.println(action);
+        // GROW cellIdx | SEED sourceIdx targetIdx | COMPLETE cellIdx | WAIT <message>
+        int action = engine.getNextAction(game, deadline);
+        //never send an illegal move
+        if (!game.isPossibleAction(action)) {
+            if (action != -1) Log.info("Illegal engine move: " + Action.toString(action));
+            action = game.getNextAction();
         }
+        timer.mark(TurnTimer.DECISION);
+        lastAction = action;
+        if (Action.type(action) == Action.WAIT)
+            return Action.toString(action) + " " + "DSP: " + game.getDailySpGeneration() + " SP: " + game.getMySunPoints();
+        return Action.toString(action);
     }
-}
\ No newline at end of file
+
+    //the output of the turn is written
+    public void sent() {
+        timer.mark(TurnTimer.OUTPUT);
+        timer.end(firstTurn ? FIRST_TURN_LIMIT : TURN_LIMIT);
+        if (recorder != null) recorder.flush();
+        firstTurn = false;
+        //waiting on the last day, no more input comes
+        if (game.getDay() == Simulator.LAST_DAY && Action.type(lastAction) == Action.WAIT) timer.logSummary();
+    }
+
+    public static void main(String args[]) {
+        InputReader in = new InputReader(System.in);
+        Log.setLevel(option(args, "log", "info"));
+        Player player = new Player(args);
+        player.readBoard(in);
+        // game loop
+        while (true) {
+            System.out.println(player.playTurn(in));
+            player.sent();
+            Log.flush();
+        }
+    }
+}
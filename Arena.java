@@ -0,0 +1,407 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+local referee of the Spring Challenge 2021 rules for the arena
+the board is the 37 cell hex: richness 3 in the middle, 2 on the next ring, 1 on the outer ring,
+with unusable cells in symmetric pairs, both players start with two small trees on the outer ring
+opposite to each other; the turns are played by the Simulator, this class writes the protocol text
+ */
+class Referee {
+    static final int CELLS = 37;
+    private static final int MAX_HOLE_PAIRS = 5;
+    //cube coordinate steps of the directions, in the order of the neighbour lists
+    private static final int[][] DIRECTIONS = {{1, -1, 0}, {1, 0, -1}, {0, 1, -1}, {-1, 1, 0}, {-1, 0, 1}, {0, -1, 1}};
+    private static final int[][] coordinates = new int[CELLS][];
+    private static final int[][] neighbours = new int[CELLS][6];
+    private static final int[] opposite = new int[CELLS];
+
+    //cell 0 is the center, the rings spiral outwards starting in direction 0
+    static {
+        int count = 0;
+        coordinates[count++] = new int[]{0, 0, 0};
+        for (int ring = 1; ring <= 3; ring++) {
+            int[] coordinate = {ring, -ring, 0};
+            for (int side = 0; side < 6; side++) {
+                int[] step = DIRECTIONS[(side + 2) % 6];
+                for (int i = 0; i < ring; i++) {
+                    coordinates[count++] = coordinate.clone();
+                    for (int axis = 0; axis < 3; axis++) coordinate[axis] += step[axis];
+                }
+            }
+        }
+        for (int cell = 0; cell < CELLS; cell++) {
+            int[] c = coordinates[cell];
+            for (int direction = 0; direction < 6; direction++) {
+                int[] step = DIRECTIONS[direction];
+                neighbours[cell][direction] = find(c[0] + step[0], c[1] + step[1], c[2] + step[2]);
+            }
+            opposite[cell] = find(-c[0], -c[1], -c[2]);
+        }
+    }
+
+    private static int find(int x, int y, int z) {
+        for (int cell = 0; cell < CELLS; cell++) {
+            if (coordinates[cell][0] == x && coordinates[cell][1] == y && coordinates[cell][2] == z) return cell;
+        }
+        return -1;
+    }
+
+    static List<Cell> createBoard(int[] richness) {
+        List<Cell> cells = new ArrayList<>();
+        for (int cell = 0; cell < CELLS; cell++) cells.add(new Cell(cell, richness[cell], neighbours[cell].clone()));
+        return cells;
+    }
+
+    private final State state = new State();
+    private final Simulator simulator = new Simulator(0);
+    private final int[] richness = new int[CELLS];
+    private final int[] moves = new int[MoveGen.MAX_MOVES];
+
+    public Referee(long seed) {
+        Random random = new Random(seed);
+        for (int cell = 0; cell < CELLS; cell++) richness[cell] = cell < 7 ? 3 : cell < 19 ? 2 : 1;
+        int holePairs = random.nextInt(MAX_HOLE_PAIRS + 1);
+        for (int i = 0; i < holePairs; i++) {
+            int cell = 1 + random.nextInt(CELLS - 1);
+            richness[cell] = richness[opposite[cell]] = 0;
+        }
+        for (int cell = 0; cell < CELLS; cell++) state.setCell(cell, richness[cell]);
+        for (int i = 0; i < 2; i++) {
+            int cell;
+            do {
+                cell = 19 + random.nextInt(CELLS - 19);
+            } while (richness[cell] == 0 || state.hasTree(cell) || state.hasTree(opposite[cell]));
+            state.addTree(cell, 1, State.ME, false);
+            state.addTree(opposite[cell], 1, State.OPP, false);
+        }
+        simulator.startGame(state);
+    }
+
+    //the board without holes, player 0 starts on the given outer cells
+    public Referee(int firstTree, int secondTree) {
+        for (int cell = 0; cell < CELLS; cell++) {
+            richness[cell] = cell < 7 ? 3 : cell < 19 ? 2 : 1;
+            state.setCell(cell, richness[cell]);
+        }
+        for (int cell : new int[]{firstTree, secondTree}) {
+            state.addTree(cell, 1, State.ME, false);
+            state.addTree(opposite[cell], 1, State.OPP, false);
+        }
+        simulator.startGame(state);
+    }
+
+    //the two outer cells of player 0 on a board without holes, the other tree is not on the first or opposite of it
+    static List<int[]> startCells() {
+        List<int[]> starts = new ArrayList<>();
+        for (int first = 19; first < CELLS; first++) {
+            for (int second = first + 1; second < CELLS; second++) {
+                if (second != opposite[first]) starts.add(new int[]{first, second});
+            }
+        }
+        return starts;
+    }
+
+    //first lines of the input: the cells with their richness and neighbours
+    public String boardInput() {
+        StringBuilder input = new StringBuilder();
+        input.append(CELLS).append('\n');
+        for (int cell = 0; cell < CELLS; cell++) {
+            input.append(cell).append(' ').append(richness[cell]);
+            for (int direction = 0; direction < 6; direction++) input.append(' ').append(neighbours[cell][direction]);
+            input.append('\n');
+        }
+        return input.toString();
+    }
+
+    //input of one turn as the player sees it, its own trees are the mine ones
+    public String turnInput(int player) {
+        int other = 1 - player;
+        StringBuilder input = new StringBuilder();
+        input.append(state.day).append('\n').append(state.nutrient).append('\n');
+        input.append(state.sun[player]).append(' ').append(state.score[player]).append('\n');
+        input.append(state.sun[other]).append(' ').append(state.score[other]).append(' ').append(state.waiting[other] ? 1 : 0).append('\n');
+        long trees = state.getTrees();
+        input.append(Long.bitCount(trees)).append('\n');
+        for (; trees != 0; trees &= trees - 1) {
+            int cell = Long.numberOfTrailingZeros(trees);
+            input.append(cell).append(' ').append(state.getSize(cell)).append(' ')
+                    .append((state.owners[player] & (1L << cell)) != 0 ? 1 : 0).append(' ')
+                    .append(state.isDormant(cell) ? 1 : 0).append('\n');
+        }
+        int count = MoveGen.generate(state, player, moves);
+        input.append(count).append('\n');
+        for (int i = 0; i < count; i++) input.append(Action.toString(moves[i])).append('\n');
+        return input.toString();
+    }
+
+    public int getDay() {
+        return state.day;
+    }
+
+    //a waiting player is not asked until the next day
+    public boolean isWaiting(int player) {
+        return state.waiting[player];
+    }
+
+    public boolean isLegal(int player, int move) {
+        int count = MoveGen.generate(state, player, moves);
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) return true;
+        }
+        return false;
+    }
+
+    public void play(int firstMove, int secondMove) {
+        simulator.play(state, firstMove, secondMove);
+    }
+
+    public boolean isGameOver() {
+        return Simulator.isGameOver(state);
+    }
+
+    //0 or 1, -1 for a draw; equal scores are decided by the number of trees
+    public int winner() {
+        int value = Simulator.finalValue(state);
+        return value > 0 ? 0 : value < 0 ? 1 : -1;
+    }
+}
+
+/*
+self-play on the local referee, run as: java Arena games=1000 a="engine=mcts" b="engine=heuristic"
+a and b are the arguments of the two Player instances, every seed is played twice with the sides swapped
+the games run on threads= threads (all cores by default), starting from seed=
+mode=process starts the players as java subprocesses on the stdin/stdout protocol (cp= is their classpath),
+by default they run in this JVM and get the same protocol text
+prints the win rate of a with its 95% confidence interval and the turn latencies of both players
+ */
+class Arena {
+    private static final double Z95 = 1.96;
+
+    //one side of a game, it gets the protocol text and answers with the output line
+    interface Bot {
+        void start(String boardInput);
+
+        String play(String turnInput);
+
+        void close();
+    }
+
+    static class InProcessBot implements Bot {
+        private final String[] args;
+        private Player player;
+        //one reader for the whole game, every turn's input is put behind it and read to the end
+        private byte[] input = new byte[0];
+        private int position;
+        private final InputReader reader = new InputReader(new InputStream() {
+            @Override
+            public int read() {
+                return position < input.length ? input[position++] : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (position == input.length) return -1;
+                int count = Math.min(length, input.length - position);
+                System.arraycopy(input, position, buffer, offset, count);
+                position += count;
+                return count;
+            }
+        });
+
+        //this JVM is warm already, the first turn is not spent on warming it up
+        InProcessBot(String[] args) {
+            this.args = Arrays.copyOf(args, args.length + 1);
+            this.args[args.length] = "warmup=false";
+        }
+
+        @Override
+        public void start(String boardInput) {
+            player = new Player(args);
+            player.readBoard(reader(boardInput));
+        }
+
+        @Override
+        public String play(String turnInput) {
+            String line = player.playTurn(reader(turnInput));
+            player.sent();
+            return line;
+        }
+
+        @Override
+        public void close() {
+            player = null;
+        }
+
+        private InputReader reader(String text) {
+            input = text.getBytes();
+            position = 0;
+            return reader;
+        }
+    }
+
+    static class ProcessBot implements Bot {
+        private final List<String> command = new ArrayList<>();
+        private Process process;
+        private BufferedWriter out;
+        private BufferedReader in;
+
+        ProcessBot(String classPath, String[] args) {
+            command.addAll(Arrays.asList("java", "-cp", classPath, "Player"));
+            command.addAll(Arrays.asList(args));
+        }
+
+        @Override
+        public void start(String boardInput) {
+            try {
+                process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+                out = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+                in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                out.write(boardInput);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        //null if the process is gone
+        @Override
+        public String play(String turnInput) {
+            try {
+                out.write(turnInput);
+                out.flush();
+                return in.readLine();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (process != null) process.destroy();
+        }
+    }
+
+    //outcome of one game from a's side, with the turn latencies of a and b
+    static class Result {
+        double score;
+        int forfeit = -1; //0 if a, 1 if b played an illegal move or stopped answering
+        final long[] latencySum = new long[2];
+        final long[] latencyMax = new long[2];
+        final int[] turns = new int[2];
+    }
+
+    static Result playGame(long seed, boolean aFirst, Bot a, Bot b) {
+        Result result = new Result();
+        Referee referee = new Referee(seed);
+        //bots and their sides in the order of the referee's players
+        Bot[] bots = aFirst ? new Bot[]{a, b} : new Bot[]{b, a};
+        int[] sides = aFirst ? new int[]{0, 1} : new int[]{1, 0};
+        int[] moves = new int[2];
+        String board = referee.boardInput();
+        try {
+            for (Bot bot : bots) bot.start(board);
+            int winner = -1;
+            game:
+            while (!referee.isGameOver()) {
+                for (int player = 0; player < 2; player++) {
+                    moves[player] = Action.WAIT;
+                    if (referee.isWaiting(player)) continue;
+                    String input = referee.turnInput(player);
+                    long start = System.nanoTime();
+                    String line = bots[player].play(input);
+                    long latency = System.nanoTime() - start;
+                    int side = sides[player];
+                    result.latencySum[side] += latency;
+                    result.latencyMax[side] = Math.max(result.latencyMax[side], latency);
+                    result.turns[side]++;
+                    moves[player] = parse(line);
+                    if (!referee.isLegal(player, moves[player])) {
+                        result.forfeit = side;
+                        winner = 1 - player;
+                        break game;
+                    }
+                }
+                referee.play(moves[0], moves[1]);
+            }
+            if (result.forfeit == -1) winner = referee.winner();
+            result.score = winner == -1 ? 0.5 : sides[winner] == 0 ? 1 : 0;
+        } finally {
+            a.close();
+            b.close();
+        }
+        return result;
+    }
+
+    //packed action of an output line, the WAIT message is ignored, -1 if it is not an action
+    private static int parse(String line) {
+        if (line == null) return -1;
+        try {
+            return Action.parse(line.trim());
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static String[] botArgs(String args) {
+        return args.trim().isEmpty() ? new String[0] : args.trim().split("\\s+");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = Integer.parseInt(Player.option(args, "games", "100"));
+        int threads = Integer.parseInt(Player.option(args, "threads", "" + Runtime.getRuntime().availableProcessors()));
+        long firstSeed = Long.parseLong(Player.option(args, "seed", "1"));
+        boolean processes = Player.option(args, "mode", "inprocess").equals("process");
+        String classPath = Player.option(args, "cp", System.getProperty("java.class.path"));
+        String[] aArgs = botArgs(Player.option(args, "a", "engine=heuristic"));
+        String[] bArgs = botArgs(Player.option(args, "b", "engine=heuristic"));
+        Log.setLevel("off");
+        //the geometry is the same on every board, it is set up before the games share it
+        Hex.init(Referee.createBoard(new int[Referee.CELLS]));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int game = 0; game < games; game++) {
+            long seed = firstSeed + game / 2;
+            boolean aFirst = game % 2 == 0;
+            futures.add(executor.submit(() -> processes ?
+                    playGame(seed, aFirst, new ProcessBot(classPath, aArgs), new ProcessBot(classPath, bArgs)) :
+                    playGame(seed, aFirst, new InProcessBot(aArgs), new InProcessBot(bArgs))));
+        }
+
+        int wins = 0, draws = 0, losses = 0;
+        int[] forfeits = new int[2];
+        double sum = 0, sumOfSquares = 0;
+        long[] latencySum = new long[2], latencyMax = new long[2];
+        long[] turns = new long[2];
+        for (Future<Result> future : futures) {
+            Result result = future.get();
+            if (result.score == 1) wins++;
+            else if (result.score == 0) losses++;
+            else draws++;
+            if (result.forfeit != -1) forfeits[result.forfeit]++;
+            sum += result.score;
+            sumOfSquares += result.score * result.score;
+            for (int side = 0; side < 2; side++) {
+                latencySum[side] += result.latencySum[side];
+                latencyMax[side] = Math.max(latencyMax[side], result.latencyMax[side]);
+                turns[side] += result.turns[side];
+            }
+        }
+        executor.shutdown();
+
+        double mean = sum / games;
+        double variance = games > 1 ? (sumOfSquares - sum * mean) / (games - 1) : 0;
+        double margin = Z95 * Math.sqrt(variance / games);
+        System.out.println("games: " + games + " wins: " + wins + " draws: " + draws + " losses: " + losses +
+                " forfeits a: " + forfeits[0] + " b: " + forfeits[1]);
+        System.out.printf("win rate of a: %.1f%% +- %.1f%% (95%%)%n", 100 * mean, 100 * margin);
+        String[] names = {"a", "b"};
+        for (int side = 0; side < 2; side++) {
+            System.out.printf("%s latency avg: %.2f ms max: %.2f ms%n", names[side],
+                    turns[side] == 0 ? 0 : latencySum[side] / 1e6 / turns[side], latencyMax[side] / 1e6);
+        }
+        System.out.printf("elapsed: %.1f s on %d threads%n", (System.nanoTime() - start) / 1e9, threads);
+    }
+}
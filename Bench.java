@@ -0,0 +1,182 @@
+import java.io.*;
+import java.util.*;
+
+/*
+micro benchmarks of the decision hot path, run as: java Bench [time=1000] [iterations=5] [filter=name]
+fixtures are turn inputs recorded from heuristic self-play on the local referee: early, mid and
+late game, each with the sparsest and the densest forest of the recorded games; a forest needs
+at least MIN_TREES of its day, so no fixture measures a nearly empty board
+every benchmark is warmed up for one iteration, then measured for iterations= rounds of time= ms
+and reported as ops/s with the spread of the rounds and the bytes allocated per op
+ */
+class Bench {
+    private static final int RECORDED_GAMES = 16;
+    private static final int[] FIXTURE_DAYS = {3, 12, 20};
+    private static final String[] PHASES = {"early", "mid", "late"};
+    private static final int[] MIN_TREES = {4, 8, 8};
+    //results go here so the JIT cannot drop the measured code
+    static volatile long sink;
+
+    interface Body {
+        long run();
+    }
+
+    static class Fixture {
+        final String name;
+        final String board;
+        final String turn;
+
+        Fixture(String name, String board, String turn) {
+            this.name = name;
+            this.board = board;
+            this.turn = turn;
+        }
+
+        //a player that has read the board and the turn
+        Player load() {
+            Player player = new Player(new String[0]);
+            player.readBoard(reader(board));
+            InputReader in = reader(turn);
+            player.getGame().setDay(in.nextInt());
+            player.readTurn(in);
+            player.getGame().setSunDirectionTo(player.getGame().getDay() % 6);
+            return player;
+        }
+    }
+
+    private static InputReader reader(String input) {
+        return new InputReader(new ByteArrayInputStream(input.getBytes()));
+    }
+
+    //first input of my player on the fixture days, the sparsest and the densest forest of each day
+    static List<Fixture> record() {
+        String[] sparse = new String[FIXTURE_DAYS.length], dense = new String[FIXTURE_DAYS.length];
+        String[] sparseBoard = new String[FIXTURE_DAYS.length], denseBoard = new String[FIXTURE_DAYS.length];
+        int[] fewest = new int[FIXTURE_DAYS.length], most = new int[FIXTURE_DAYS.length];
+        Arrays.fill(fewest, Integer.MAX_VALUE);
+        Arrays.fill(most, -1);
+        for (int seed = 1; seed <= RECORDED_GAMES; seed++) {
+            Referee referee = new Referee(seed);
+            String board = referee.boardInput();
+            Arena.Bot[] bots = {new Arena.InProcessBot(new String[0]), new Arena.InProcessBot(new String[0])};
+            for (Arena.Bot bot : bots) bot.start(board);
+            int[] moves = new int[2];
+            int recordedDay = -1;
+            while (!referee.isGameOver()) {
+                for (int player = 0; player < 2; player++) {
+                    moves[player] = Action.WAIT;
+                    if (referee.isWaiting(player)) continue;
+                    String input = referee.turnInput(player);
+                    int day = Integer.parseInt(input.substring(0, input.indexOf('\n')));
+                    int phase = Arrays.binarySearch(FIXTURE_DAYS, day);
+                    if (player == 0 && phase >= 0 && recordedDay != day && treeCount(input) >= MIN_TREES[phase]) {
+                        recordedDay = day;
+                        int trees = treeCount(input);
+                        if (trees < fewest[phase]) {
+                            fewest[phase] = trees;
+                            sparse[phase] = input;
+                            sparseBoard[phase] = board;
+                        }
+                        if (trees > most[phase]) {
+                            most[phase] = trees;
+                            dense[phase] = input;
+                            denseBoard[phase] = board;
+                        }
+                    }
+                    moves[player] = Action.parse(bots[player].play(input));
+                }
+                referee.play(moves[0], moves[1]);
+            }
+        }
+        List<Fixture> fixtures = new ArrayList<>();
+        for (int phase = 0; phase < FIXTURE_DAYS.length; phase++) {
+            if (most[phase] == -1) throw new IllegalStateException("no recorded forest of " + MIN_TREES[phase] + " trees on day " + FIXTURE_DAYS[phase]);
+            fixtures.add(new Fixture(PHASES[phase] + "/sparse(" + fewest[phase] + ")", sparseBoard[phase], sparse[phase]));
+            fixtures.add(new Fixture(PHASES[phase] + "/dense(" + most[phase] + ")", denseBoard[phase], dense[phase]));
+        }
+        return fixtures;
+    }
+
+    //the tree count is the 5th line of the turn input
+    private static int treeCount(String input) {
+        return Integer.parseInt(input.split("\n")[4].trim());
+    }
+
+    static void measure(String benchmark, String fixture, Body body, long time, int iterations) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        double[] rates = new double[iterations];
+        long allocated = 0, operations = 0;
+        //the first round is the warm up
+        for (int round = -1; round < iterations; round++) {
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime(), end = start + time * 1_000_000L, now;
+            long count = 0, result = 0;
+            do {
+                for (int i = 0; i < 64; i++) result += body.run();
+                count += 64;
+                now = System.nanoTime();
+            } while (now < end);
+            sink = result;
+            if (round < 0) continue;
+            rates[round] = count * 1e9 / (now - start);
+            allocated += threads.getThreadAllocatedBytes(thread) - bytesBefore;
+            operations += count;
+        }
+        double mean = 0;
+        for (double rate : rates) mean += rate / iterations;
+        double variance = 0;
+        for (double rate : rates) variance += (rate - mean) * (rate - mean) / Math.max(1, iterations - 1);
+        System.out.printf("%-22s %-18s %14.0f %12.0f %10.2f%n", benchmark, fixture, mean, Math.sqrt(variance), (double) allocated / operations);
+    }
+
+    public static void main(String[] args) {
+        long time = Long.parseLong(Player.option(args, "time", "1000"));
+        int iterations = Integer.parseInt(Player.option(args, "iterations", "5"));
+        String filter = Player.option(args, "filter", "");
+        Log.setLevel("off");
+        List<Fixture> fixtures = record();
+
+        System.out.printf("%-22s %-18s %14s %12s %10s%n", "Benchmark", "Fixture", "ops/s", "+-", "B/op");
+        for (Fixture fixture : fixtures) {
+            Player player = fixture.load();
+            Game game = player.getGame();
+            //the reader is reused, every op rewinds the stream and reads the whole turn again
+            ByteArrayInputStream turn = new ByteArrayInputStream(fixture.turn.getBytes());
+            InputReader turnReader = new InputReader(turn);
+            String[] actions = Arrays.copyOfRange(fixture.turn.split("\n"), 6 + treeCount(fixture.turn), fixture.turn.split("\n").length);
+            Map<String, Body> bodies = new LinkedHashMap<>();
+            bodies.put("setShadows", () -> {
+                game.setShadows();
+                return game.getDailySpGeneration();
+            });
+            bodies.put("updateHeuristics", () -> {
+                game.invalidateHeuristics();
+                game.updateHeuristics();
+                return game.getSeedHeuristics(0);
+            });
+            bodies.put("setNeighborTrees", () -> {
+                game.setNeighborTrees(Hex.boardMask);
+                return game.hasNeighborTree(0) ? 1 : 0;
+            });
+            bodies.put("getNextAction", () -> {
+                game.generatePossibleActions();
+                return game.getNextAction();
+            });
+            bodies.put("Action.parse", () -> {
+                long sum = 0;
+                for (String action : actions) sum += Action.parse(action);
+                return sum;
+            });
+            bodies.put("readTurn", () -> {
+                turn.reset();
+                game.setDay(turnReader.nextInt());
+                player.readTurn(turnReader);
+                return game.getMySunPoints();
+            });
+            for (Map.Entry<String, Body> body : bodies.entrySet()) {
+                if (body.getKey().contains(filter)) measure(body.getKey(), fixture.name, body.getValue(), time, iterations);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+builds the opening book, run as: java BookGenerator turnMs=1000 out=book.txt
+plays one game from every start of the board without holes with the engine= of both players given
+turnMs= per move, and records every move made before OpeningBook.DAYS as seen by the player who made it;
+the first game to reach a position decides its move; the games run on threads= threads
+the base64 text written to out= is pasted into OpeningBook.DATA, it has to fit in the contest source
+ */
+class BookGenerator {
+    static Map<Integer, Integer> record(Referee referee, String[] playerArgs) {
+        Map<Integer, Integer> entries = new LinkedHashMap<>();
+        String board = referee.boardInput();
+        Player[] players = {new Player(playerArgs), new Player(playerArgs)};
+        for (Player player : players) player.readBoard(new InputReader(new ByteArrayInputStream(board.getBytes())));
+        int[] moves = new int[2];
+        while (!referee.isGameOver() && referee.getDay() < OpeningBook.DAYS) {
+            for (int player = 0; player < 2; player++) {
+                moves[player] = Action.WAIT;
+                if (referee.isWaiting(player)) continue;
+                String line = players[player].playTurn(new InputReader(new ByteArrayInputStream(referee.turnInput(player).getBytes())));
+                players[player].sent();
+                moves[player] = Action.parse(line);
+                entries.putIfAbsent(OpeningBook.key(players[player].getGame().getState()), moves[player]);
+            }
+            referee.play(moves[0], moves[1]);
+        }
+        return entries;
+    }
+
+    //6 bytes for every entry sorted by key, as OpeningBook.decode reads them
+    static String encode(Map<Integer, Integer> entries) {
+        int[] keys = new int[entries.size()];
+        int i = 0;
+        for (int key : entries.keySet()) keys[i++] = key;
+        Arrays.sort(keys);
+        byte[] bytes = new byte[keys.length * 6];
+        for (i = 0; i < keys.length; i++) {
+            int move = OpeningBook.encode(entries.get(keys[i]));
+            for (int b = 0; b < 4; b++) bytes[i * 6 + b] = (byte) (keys[i] >>> (24 - 8 * b));
+            bytes[i * 6 + 4] = (byte) (move >>> 8);
+            bytes[i * 6 + 5] = (byte) move;
+        }
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.parseInt(Player.option(args, "threads", "" + Runtime.getRuntime().availableProcessors()));
+        String out = Player.option(args, "out", "book.txt");
+        String turnMs = Player.option(args, "turnMs", "1000");
+        //book=false, the engine plays the positions itself
+        String[] playerArgs = {"engine=" + Player.option(args, "engine", "mcts"), "turnMs=" + turnMs, "firstTurnMs=" + turnMs,
+                "warmup=false", "book=false"};
+        Log.setLevel("off");
+        Hex.init(Referee.createBoard(new int[Referee.CELLS]));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Map<Integer, Integer>>> futures = new ArrayList<>();
+        for (int[] start : Referee.startCells()) futures.add(executor.submit(() -> record(new Referee(start[0], start[1]), playerArgs)));
+        Map<Integer, Integer> entries = new HashMap<>();
+        for (Future<Map<Integer, Integer>> future : futures) {
+            for (Map.Entry<Integer, Integer> entry : future.get().entrySet()) entries.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        executor.shutdown();
+        String data = encode(entries);
+        try (Writer writer = new FileWriter(out)) {
+            writer.write(data);
+        }
+        System.out.println("positions: " + entries.size() + ", " + data.length() + " characters written to " + out);
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+root parallel MCTS: every worker thread owns an MctsEngine with its own node pool, transposition
+table, random generator and copy of the position, nothing of the Game is shared with them;
+they search the same root until the deadline and the visits of my root moves are summed,
+the most visited move is played; the playouts of all workers are counted without locks
+ */
+class ParallelMctsEngine implements Engine {
+    private final MctsEngine[] workers;
+    private final State[] positions;
+    private final ExecutorService executor;
+    private final LongAdder playouts = new LongAdder();
+    private final List<Callable<Integer>> tasks = new ArrayList<>();
+    private final int[] moves = new int[MoveGen.MAX_MOVES];
+    private final long[] visits = new long[MoveGen.MAX_MOVES];
+    private Deadline deadline;
+
+    public ParallelMctsEngine(int threads, long seed, int tableMegabytes, Params params, boolean reuse) {
+        workers = new MctsEngine[threads];
+        positions = new State[threads];
+        //daemon threads, they must not keep the bot alive
+        executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "mcts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < threads; i++) {
+            MctsEngine worker = workers[i] = new MctsEngine(seed + i, tableMegabytes, params, reuse);
+            State position = positions[i] = new State();
+            tasks.add(() -> {
+                int count = worker.search(position, deadline);
+                playouts.add(count);
+                return count;
+            });
+        }
+    }
+
+    @Override
+    public int getNextAction(Game game, Deadline deadline) {
+        //the positions are copied here, the workers only read their own copy
+        for (State position : positions) position.copyFrom(game.getState());
+        this.deadline = deadline;
+        long before = playouts.sum();
+        long start = System.nanoTime();
+        try {
+            for (Future<Integer> future : executor.invokeAll(tasks)) future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("MCTS worker failed", e);
+        }
+
+        //root moves are generated the same way by every worker, but they are matched by move anyway
+        int count = 0;
+        for (MctsEngine worker : workers) {
+            for (int i = 0; i < worker.getRootChildCount(); i++) {
+                int move = worker.getRootMove(i);
+                int index = 0;
+                while (index < count && moves[index] != move) index++;
+                if (index == count) {
+                    moves[count] = move;
+                    visits[count++] = 0;
+                }
+                visits[index] += worker.getRootVisits(i);
+            }
+        }
+        int best = -1;
+        for (int i = 0; i < count; i++) {
+            if (best == -1 || visits[i] > visits[best]) best = i;
+        }
+        if (Log.isInfo()) {
+            long done = playouts.sum() - before;
+            Log.info("MCTS workers: " + workers.length + " playouts: " + done + " per second: " +
+                    done * 1_000_000_000L / Math.max(1, System.nanoTime() - start));
+        }
+        return best == -1 ? -1 : moves[best];
+    }
+}
+
+/*
+plans all of my actions of a day on its first call and serves the rest of the day from the plan
+the plan is searched by a rolling horizon evolution: a genome is the day's sequence of my choices,
+a gene picks a legal move by index or (-1) the heuristic policy's move; the opponent plays the policy,
+after the day both play the policy for ROLLOUT_DAYS more days and the position is scored
+the first genome is the pure heuristic day, so the plan is never worse than it under this model;
+a later call of the day is answered from the plan when my part of the state is the predicted one,
+otherwise the day is planned again
+ */
+class DayPlanner implements Engine {
+    private static final int GENES = 8;
+    private static final int POPULATION = 8;
+    private static final int MAX_TURNS = 64;
+    private static final int ROLLOUT_DAYS = 8;
+
+    private final HeuristicPolicy policy;
+    private final Simulator simulator = new Simulator(0);
+    private final Random random;
+    private final State root = new State();
+    private final State scratch = new State();
+    private final int[] moves = new int[MoveGen.MAX_MOVES];
+    private final int[][] population = new int[POPULATION][GENES];
+    private final double[] fitness = new double[POPULATION];
+    private final int[] child = new int[GENES];
+    //the plan: my moves of the day and the state expected when each of them is asked for
+    private final int[] plan = new int[GENES + 1];
+    private final State[] expected = new State[GENES + 1];
+    private int planLength, planStep;
+    private int planDay = -1;
+    private long plannedCalls, servedCalls;
+
+    public DayPlanner(long seed, Params params) {
+        random = new Random(seed);
+        policy = new HeuristicPolicy(params);
+        for (int i = 0; i < expected.length; i++) expected[i] = new State();
+    }
+
+    @Override
+    public int getNextAction(Game game, Deadline deadline) {
+        State state = game.getState();
+        if (planDay == state.day && planStep < planLength && sameForMe(state, expected[planStep]) &&
+                game.isPossibleAction(plan[planStep])) {
+            servedCalls++;
+            Log.info("Plan step: ", planStep);
+            return plan[planStep++];
+        }
+        plannedCalls++;
+        int evaluations = search(state, deadline);
+        if (Log.isInfo()) Log.info("Day plan: " + planLength + " moves, evaluations: " + evaluations +
+                " planned/served calls: " + plannedCalls + "/" + servedCalls);
+        if (planLength == 0) return -1;
+        planStep = 1;
+        return plan[0];
+    }
+
+    private int search(State state, Deadline deadline) {
+        root.copyFrom(state);
+        root.setWaiting(State.ME, false);
+        for (int i = 0; i < POPULATION; i++) {
+            for (int g = 0; g < GENES; g++) population[i][g] = i == 0 || random.nextBoolean() ? -1 : random.nextInt(1 << 16);
+            fitness[i] = evaluate(population[i]);
+        }
+        int evaluations = POPULATION;
+        while (!deadline.isOver()) {
+            int[] parent = population[tournament()];
+            for (int g = 0; g < GENES; g++) {
+                child[g] = parent[g];
+                if (random.nextInt(GENES) == 0) child[g] = random.nextBoolean() ? -1 : random.nextInt(1 << 16);
+            }
+            double value = evaluate(child);
+            evaluations++;
+            int worst = 0;
+            for (int i = 1; i < POPULATION; i++) {
+                if (fitness[i] < fitness[worst]) worst = i;
+            }
+            if (value > fitness[worst]) {
+                System.arraycopy(child, 0, population[worst], 0, GENES);
+                fitness[worst] = value;
+            }
+        }
+        int best = 0;
+        for (int i = 1; i < POPULATION; i++) {
+            if (fitness[i] > fitness[best]) best = i;
+        }
+        record(population[best]);
+        planDay = state.day;
+        return evaluations;
+    }
+
+    private int tournament() {
+        int a = random.nextInt(POPULATION), b = random.nextInt(POPULATION);
+        return fitness[a] >= fitness[b] ? a : b;
+    }
+
+    //my move for the gene in the scratch position
+    private int decode(int gene) {
+        int count = MoveGen.generate(scratch, State.ME, moves);
+        return gene == -1 ? policy.choose(scratch, State.ME, moves, count) : moves[gene % count];
+    }
+
+    private int oppMove() {
+        if (scratch.waiting[State.OPP]) return Action.WAIT;
+        int count = MoveGen.generate(scratch, State.OPP, moves);
+        return policy.choose(scratch, State.OPP, moves, count);
+    }
+
+    //plays the genome's day, the genes after my WAIT are not used
+    private void playDay(int[] genome, boolean recording) {
+        scratch.copyFrom(root);
+        int day = scratch.day, gene = 0;
+        for (int turn = 0; turn < MAX_TURNS && scratch.day == day && !Simulator.isGameOver(scratch); turn++) {
+            int myMove = Action.WAIT;
+            if (!scratch.waiting[State.ME]) {
+                if (recording) expected[planLength].copyFrom(scratch);
+                myMove = gene < GENES ? decode(genome[gene++]) : Action.WAIT;
+                if (recording) plan[planLength++] = myMove;
+            }
+            simulator.play(scratch, myMove, oppMove());
+        }
+    }
+
+    private double evaluate(int[] genome) {
+        playDay(genome, false);
+        int lastDay = scratch.day + ROLLOUT_DAYS;
+        for (int turn = 0; !Simulator.isGameOver(scratch) && scratch.day < lastDay; turn++) {
+            int myMove = Action.WAIT;
+            if (!scratch.waiting[State.ME]) {
+                int count = MoveGen.generate(scratch, State.ME, moves);
+                myMove = policy.choose(scratch, State.ME, moves, count);
+            }
+            simulator.play(scratch, myMove, oppMove());
+        }
+        return (Simulator.isGameOver(scratch) ? Simulator.finalValue(scratch) : Simulator.estimate(scratch)) / 100.0;
+    }
+
+    private void record(int[] genome) {
+        planLength = 0;
+        playDay(genome, true);
+    }
+
+    //my trees, sun and score as predicted, the opponent may have played anything
+    private static boolean sameForMe(State state, State prediction) {
+        long mine = state.owners[State.ME];
+        if (mine != prediction.owners[State.ME] || state.day != prediction.day) return false;
+        for (int size = 0; size < 4; size++) {
+            if ((state.sizes[size] & mine) != (prediction.sizes[size] & mine)) return false;
+        }
+        return (state.dormant & mine) == (prediction.dormant & mine) && state.sun[State.ME] == prediction.sun[State.ME] &&
+                state.score[State.ME] == prediction.score[State.ME];
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.*;
+import java.util.*;
+
+/*
+compact binary recording of the game input, record=<file> writes it while playing
+header: magic, version, cell count, then every cell's richness and its 6 neighbours + 1
+a turn: day, nutrient, my sun and score, opp sun, score and waiting, the tree count and every tree
+as its cell and size | mine << 2 | dormant << 3, then the legal actions as packed ints
+all numbers are varints; Replay.read gives back the protocol text, so a recording can be played again
+ */
+class TurnRecorder implements Recorder {
+    static final int MAGIC = 0x5455524E; //TURN
+    static final int VERSION = 1;
+
+    private final DataOutputStream out;
+
+    public TurnRecorder(String file) {
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 14));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeBoard(List<Cell> cells) {
+        try {
+            writeVarint(cells.size());
+            for (Cell cell : cells) {
+                writeVarint(cell.getRichness());
+                for (int neighbour : cell.getNeighbours()) writeVarint(neighbour + 1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //the turn as my player read it, the actions are the referee's list
+    @Override
+    public void writeTurn(State state, int[] actions, int count) {
+        try {
+            writeVarint(state.day);
+            writeVarint(state.nutrient);
+            writeVarint(state.sun[State.ME]);
+            writeVarint(state.score[State.ME]);
+            writeVarint(state.sun[State.OPP]);
+            writeVarint(state.score[State.OPP]);
+            writeVarint(state.waiting[State.OPP] ? 1 : 0);
+            long trees = state.getTrees();
+            writeVarint(Long.bitCount(trees));
+            for (; trees != 0; trees &= trees - 1) {
+                int cell = Long.numberOfTrailingZeros(trees);
+                out.writeByte(cell);
+                out.writeByte(state.getSize(cell) | (state.isMine(cell) ? 4 : 0) | (state.isDormant(cell) ? 8 : 0));
+            }
+            writeVarint(count);
+            for (int i = 0; i < count; i++) writeVarint(actions[i]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //after the output is sent, so the file is complete even if the game is stopped
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+}
+
+/*
+plays a recording again without a referee, run as: java Replay file=game.rec a="engine=heuristic"
+every turn goes to the a= player as fast as it answers, its latency and allocation are reported;
+with b= the same turns go to a second player and every turn where the actions differ is listed,
+check=true lists the differences of the moves MoveGen generates and the legal actions that were recorded,
+and every turn or move where the incremental hash is not the one State.computeHash gives,
+bcp= runs b as a java subprocess on that classpath, so two builds of the bot can be compared
+the allocation is only known for players in this JVM
+ */
+class Replay {
+    static class Side {
+        final String name;
+        final Arena.Bot bot;
+        final boolean inProcess;
+        final List<Long> latencies = new ArrayList<>();
+        long allocated;
+
+        Side(String name, Arena.Bot bot, boolean inProcess) {
+            this.name = name;
+            this.bot = bot;
+            this.inProcess = inProcess;
+        }
+
+        String play(String input, com.sun.management.ThreadMXBean threads) {
+            long thread = Thread.currentThread().getId();
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            String line = bot.play(input);
+            latencies.add(System.nanoTime() - start);
+            allocated += threads.getThreadAllocatedBytes(thread) - bytes;
+            return line == null ? "" : line;
+        }
+
+        void report() {
+            long[] sorted = new long[latencies.size()];
+            for (int i = 0; i < sorted.length; i++) sorted[i] = latencies.get(i);
+            Arrays.sort(sorted);
+            if (sorted.length == 0) return;
+            System.out.printf("%s latency p50: %d us p99: %d us max: %d us%s%n", name, sorted[(sorted.length - 1) / 2] / 1000,
+                    sorted[(sorted.length - 1) * 99 / 100] / 1000, sorted[sorted.length - 1] / 1000,
+                    inProcess ? " allocated: " + allocated / sorted.length + " B/turn" : "");
+        }
+    }
+
+    private static Side side(String name, String args, String classPath) {
+        String[] botArgs = args.trim().isEmpty() ? new String[0] : args.trim().split("\\s+");
+        if (classPath.isEmpty()) return new Side(name, new Arena.InProcessBot(botArgs), true);
+        return new Side(name, new Arena.ProcessBot(classPath, botArgs), false);
+    }
+
+    //the action of an output line without the WAIT message
+    private static String action(String line) {
+        return Action.toString(Action.parse(line.trim()));
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    //the board input first, then the input of every recorded turn
+    static List<String> read(String file) {
+        List<String> inputs = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != TurnRecorder.MAGIC || in.readInt() != TurnRecorder.VERSION) throw new IOException("Not a recording: " + file);
+            StringBuilder input = new StringBuilder();
+            int cells = readVarint(in);
+            input.append(cells).append('\n');
+            for (int cell = 0; cell < cells; cell++) {
+                input.append(cell).append(' ').append(readVarint(in));
+                for (int d = 0; d < 6; d++) input.append(' ').append(readVarint(in) - 1);
+                input.append('\n');
+            }
+            inputs.add(input.toString());
+            while (in.available() > 0) {
+                input.setLength(0);
+                input.append(readVarint(in)).append('\n').append(readVarint(in)).append('\n');
+                input.append(readVarint(in)).append(' ').append(readVarint(in)).append('\n');
+                input.append(readVarint(in)).append(' ').append(readVarint(in)).append(' ').append(readVarint(in)).append('\n');
+                int trees = readVarint(in);
+                input.append(trees).append('\n');
+                for (int i = 0; i < trees; i++) {
+                    int cell = in.readUnsignedByte(), flags = in.readUnsignedByte();
+                    input.append(cell).append(' ').append(flags & 3).append(' ').append((flags >> 2) & 1).append(' ')
+                            .append((flags >> 3) & 1).append('\n');
+                }
+                int actions = readVarint(in);
+                input.append(actions).append('\n');
+                for (int i = 0; i < actions; i++) input.append(Action.toString(readVarint(in))).append('\n');
+                inputs.add(input.toString());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return inputs;
+    }
+
+    private static InputReader reader(String input) {
+        return new InputReader(new ByteArrayInputStream(input.getBytes()));
+    }
+
+    /*
+    compares the moves MoveGen generates with the legal actions the referee sent, and the incrementally kept
+    hash with State.computeHash after the input and after every generated move; returns the number of differences
+     */
+    static int check(List<String> inputs) {
+        Player player = new Player(new String[]{"warmup=false", "book=false"});
+        player.readBoard(reader(inputs.get(0)));
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        State next = new State();
+        Simulator simulator = new Simulator(0);
+        int differences = 0;
+        for (int turn = 1; turn < inputs.size(); turn++) {
+            String input = inputs.get(turn);
+            player.playTurn(reader(input));
+            player.sent();
+            //day, nutrient, 2 player lines, the trees, then the actions
+            String[] lines = input.split("\n");
+            int actionsLine = 5 + Integer.parseInt(lines[4]);
+            Set<Integer> referee = new HashSet<>();
+            for (int i = actionsLine + 1; i < lines.length; i++) referee.add(Action.parse(lines[i]));
+            State state = player.getGame().getState();
+            if (state.hash != state.computeHash()) {
+                differences++;
+                System.out.println("turn " + turn + ": hash of the input differs");
+            }
+            int count = MoveGen.generate(state, State.ME, moves);
+            Set<Integer> generated = new HashSet<>();
+            for (int i = 0; i < count; i++) generated.add(moves[i]);
+            for (int move : referee) {
+                if (generated.contains(move)) continue;
+                differences++;
+                System.out.println("turn " + turn + ": move not generated: " + Action.toString(move));
+            }
+            for (int move : generated) {
+                if (referee.contains(move)) continue;
+                differences++;
+                System.out.println("turn " + turn + ": move generated but not legal: " + Action.toString(move));
+            }
+            for (int i = 0; i < count; i++) {
+                next.copyFrom(state);
+                simulator.play(next, moves[i], Action.WAIT);
+                if (next.hash == next.computeHash()) continue;
+                differences++;
+                System.out.println("turn " + turn + ": hash differs after " + Action.toString(moves[i]));
+            }
+        }
+        return differences;
+    }
+
+    public static void main(String[] args) {
+        List<String> inputs = read(Player.option(args, "file", "game.rec"));
+        Log.setLevel("off");
+        //check=true only checks the move generator and the hash on the recorded turns
+        if (Boolean.parseBoolean(Player.option(args, "check", "false"))) {
+            System.out.println("differences: " + check(inputs));
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        List<Side> sides = new ArrayList<>();
+        sides.add(side("a", Player.option(args, "a", ""), Player.option(args, "acp", "")));
+        String b = Player.option(args, "b", null);
+        if (b != null) sides.add(side("b", b, Player.option(args, "bcp", "")));
+        for (Side side : sides) side.bot.start(inputs.get(0));
+
+        int differences = 0;
+        for (int turn = 1; turn < inputs.size(); turn++) {
+            String input = inputs.get(turn);
+            String first = action(sides.get(0).play(input, threads));
+            if (sides.size() == 1) continue;
+            String second = action(sides.get(1).play(input, threads));
+            if (!first.equals(second)) {
+                differences++;
+                System.out.println("turn " + turn + " day " + input.substring(0, input.indexOf('\n')) + ": a " + first + " b " + second);
+            }
+        }
+        for (Side side : sides) side.bot.close();
+        System.out.println("turns: " + (inputs.size() - 1));
+        for (Side side : sides) side.report();
+        if (sides.size() > 1) System.out.println("different actions: " + differences);
+    }
+}
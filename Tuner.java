@@ -0,0 +1,127 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+SPSA tuning of the Params on the arena, run as: java Tuner iterations=200 games=64 checkpoint=tuner.txt
+every iteration moves all parameters at once by a random +-step, plays the plus vector against the
+minus vector on games= seeds (sides swapped) in a fork/join pool and steps along the score difference
+the parameters are tuned as fractions of their MIN..MAX range and rounded when played
+the checkpoint is rewritten after every iteration and resumed from on start, it is also a params file
+bot= adds Player arguments for both sides, threads= and seed= are as in the Arena
+ */
+class Tuner {
+    //the usual SPSA gain schedules: a / (k + 1 + A)^0.602 and c / (k + 1)^0.101
+    private static final double STEP = 0.2;
+    private static final double STEP_OFFSET = 20;
+    private static final double PERTURBATION = 0.1;
+
+    private final double[] theta = new double[Params.NAMES.length];
+    private int iteration;
+
+    public Tuner() {
+        for (int i = 0; i < theta.length; i++) theta[i] = normalize(i, Params.DEFAULTS[i]);
+    }
+
+    private static double normalize(int index, double value) {
+        return (value - Params.MIN[index]) / (Params.MAX[index] - Params.MIN[index]);
+    }
+
+    private static double denormalize(int index, double value) {
+        return Params.MIN[index] + value * (Params.MAX[index] - Params.MIN[index]);
+    }
+
+    private static String inline(double[] vector) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) text.append(',');
+            text.append(Params.NAMES[i]).append('=').append(Math.round(denormalize(i, vector[i])));
+        }
+        return text.toString();
+    }
+
+    //the plus vector's score against the minus vector, in 0..1
+    private static double match(ForkJoinPool pool, String[] plusArgs, String[] minusArgs, long firstSeed, int games) throws Exception {
+        List<Callable<Arena.Result>> tasks = new ArrayList<>();
+        for (int game = 0; game < games; game++) {
+            long seed = firstSeed + game / 2;
+            boolean plusFirst = game % 2 == 0;
+            tasks.add(() -> Arena.playGame(seed, plusFirst, new Arena.InProcessBot(plusArgs), new Arena.InProcessBot(minusArgs)));
+        }
+        double score = 0;
+        for (Future<Arena.Result> result : pool.invokeAll(tasks)) score += result.get().score;
+        return score / games;
+    }
+
+    private static String[] botArgs(String bot, String params) {
+        String args = bot.trim() + " params=" + params;
+        return args.trim().split("\\s+");
+    }
+
+    void step(ForkJoinPool pool, String bot, long seed, int games, Random random) throws Exception {
+        double a = STEP / Math.pow(iteration + 1 + STEP_OFFSET, 0.602);
+        double c = PERTURBATION / Math.pow(iteration + 1, 0.101);
+        double[] delta = new double[theta.length];
+        double[] plus = new double[theta.length], minus = new double[theta.length];
+        for (int i = 0; i < theta.length; i++) {
+            delta[i] = random.nextBoolean() ? 1 : -1;
+            plus[i] = Math.max(0, Math.min(1, theta[i] + c * delta[i]));
+            minus[i] = Math.max(0, Math.min(1, theta[i] - c * delta[i]));
+        }
+        double score = match(pool, botArgs(bot, inline(plus)), botArgs(bot, inline(minus)), seed, games);
+        //score - 0.5 is the plus side's advantage, the gradient estimate is (2 * score - 1) / (2 * c * delta)
+        for (int i = 0; i < theta.length; i++) {
+            theta[i] = Math.max(0, Math.min(1, theta[i] + a * (2 * score - 1) / (2 * c * delta[i])));
+        }
+        iteration++;
+        System.out.printf("iteration: %d plus score: %.3f params: %s%n", iteration, score, inline(theta));
+    }
+
+    void save(String file) throws IOException {
+        File temporary = new File(file + ".tmp");
+        try (PrintWriter out = new PrintWriter(new FileWriter(temporary))) {
+            out.println("# iteration " + iteration);
+            for (int i = 0; i < theta.length; i++) out.println(Params.NAMES[i] + "=" + denormalize(i, theta[i]));
+        }
+        //the old checkpoint stays until the new one is complete
+        if (!temporary.renameTo(new File(file))) throw new IOException("Cannot write checkpoint " + file);
+    }
+
+    void resume(String file) throws IOException {
+        if (!new File(file).exists()) return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.startsWith("# iteration ")) {
+                    iteration = Integer.parseInt(line.substring("# iteration ".length()).trim());
+                    continue;
+                }
+                int separator = line.indexOf('=');
+                int index = Arrays.asList(Params.NAMES).indexOf(line.substring(0, separator));
+                if (index != -1) theta[index] = normalize(index, Double.parseDouble(line.substring(separator + 1)));
+            }
+        }
+        System.out.println("resumed at iteration: " + iteration + " params: " + inline(theta));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = Integer.parseInt(Player.option(args, "iterations", "100"));
+        int games = Integer.parseInt(Player.option(args, "games", "64"));
+        int threads = Integer.parseInt(Player.option(args, "threads", "" + Runtime.getRuntime().availableProcessors()));
+        long seed = Long.parseLong(Player.option(args, "seed", "1"));
+        String checkpoint = Player.option(args, "checkpoint", "tuner.txt");
+        String bot = Player.option(args, "bot", "engine=heuristic");
+        Log.setLevel("off");
+        Hex.init(Referee.createBoard(new int[Referee.CELLS]));
+
+        Tuner tuner = new Tuner();
+        tuner.resume(checkpoint);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        //the random signs and the seeds only depend on the iteration, so a resumed run goes on the same way
+        while (tuner.iteration < iterations) {
+            Random random = new Random(seed * 1_000_003L + tuner.iteration);
+            tuner.step(pool, bot, seed + (long) tuner.iteration * games, games, random);
+            tuner.save(checkpoint);
+        }
+        pool.shutdown();
+    }
+}